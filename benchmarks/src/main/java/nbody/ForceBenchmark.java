@@ -0,0 +1,78 @@
+package nbody;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The force calculation of one step.
+
+    walk:   the tree is built once, every invocation walks it for all bodies on one thread
+    step:   GravitySolver.computeForces, i.e. the build and the parallel walk like in the simulation
+
+    grouped: step walks the flat trees once per group of nearby bodies, see Simulation.groupedWalk
+
+    For Fmm only step uses the fast multipole method, walk is the Barnes Hut walk of the same octree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ForceBenchmark {
+
+    @Param({"galaxy10k", "galaxy20k", "galaxy30k", "random100k", "random1m"})
+    public String input;
+
+    @Param({"Octree", "FlatOctree-Parallel", "FlatQuadtree-Parallel", "FlatQuadtree-Morton", "Fmm-Parallel"})
+    public String tree;
+
+    @Param({"false", "true"})
+    public boolean grouped;
+
+    private BodyStore bodies;
+    private CelestialBody[] views;
+    private FlatTree flatTree;
+    private Octree octree;
+    private GravitySolver solver;
+
+    @Setup
+    public void setup() throws IOException {
+        this.bodies = Inputs.load(this.input);
+        Simulation.groupedWalk = this.grouped;
+        this.views = this.bodies.views();
+        this.flatTree = Trees.flatTree(this.tree);
+        if (this.flatTree == null) {
+            this.octree = Trees.buildOctree(this.views);
+            this.solver = new OctreeSolver();
+        } else {
+            this.flatTree.build(this.bodies, Simulation.RADIUS);
+            this.solver = Trees.flatTree(this.tree);
+        }
+    }
+
+    @Benchmark
+    public BodyStore walk() {
+        BodyStore bodies = this.bodies;
+        if (this.flatTree != null) {
+            for (int i = 0; i < bodies.size(); i++) {
+                bodies.resetForce(i);
+                this.flatTree.updateForce(i);
+            }
+        } else {
+            for (CelestialBody body : this.views) {
+                body.resetForces();
+                if (this.octree.inBoundingBox(body)) this.octree.updateForce(body);
+            }
+        }
+        return bodies;
+    }
+
+    @Benchmark
+    public BodyStore step() {
+        this.solver.computeForces(this.bodies);
+        return this.bodies;
+    }
+}
@@ -0,0 +1,55 @@
+package nbody;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/*
+    The inputs of the benchmarks: the bundled samples and synthetic galaxies.
+
+    galaxy10k, galaxy20k, galaxy30k     The samples of src/samples, the directory can be set with -Dnbody.samples=<dir>
+    random100k, random1m                A flat disk of 100 000 or 1 000 000 bodies with a fixed seed, so every
+                                        fork gets the same bodies (Helper uses a new Random for every number)
+ */
+final class Inputs {
+
+    static final String SAMPLES = System.getProperty("nbody.samples", "src/samples");
+
+    private Inputs() { }
+
+    // Returns the bodies of the input, sets Simulation.RADIUS like CelestialBody.readGalaxy
+    static BodyStore load(String name) throws IOException {
+        switch (name) {
+            case "random100k": return disk(100_000, 42);
+            case "random1m":   return disk(1_000_000, 42);
+            default:           return GalaxyReader.read(sample(name));
+        }
+    }
+
+    // Returns the text file of a sample
+    static File sample(String name) {
+        return new File(SAMPLES, name + ".txt");
+    }
+
+    // A flat disk of n bodies rotating around a heavy center, inside the default universe
+    static BodyStore disk(int n, long seed) {
+        Random random = new Random(seed);
+        Simulation.RADIUS = 2.83800E06;
+        double radius = CelestialBody.avgBodyToUniverseRadius();
+        double center = 1e24;
+        BodyStore bodies = new BodyStore(n);
+        bodies.set(0, 0, 0, 0, 0, 0, 0, center, radius, Color.yellow);
+        for (int i = 1; i < n; i++) {
+            // Denser towards the center, but never on it
+            double r = Simulation.RADIUS * (0.02 + 0.9 * random.nextDouble() * random.nextDouble());
+            double angle = 2 * Math.PI * random.nextDouble();
+            double x = r * Math.cos(angle);
+            double y = r * Math.sin(angle);
+            double v = Math.sqrt(Simulation.G * center / r);
+            bodies.set(i, x, y, 0, -v * Math.sin(angle), v * Math.cos(angle), 0,
+                    1e18 + random.nextDouble() * 1e19, radius, Color.white);
+        }
+        return bodies;
+    }
+}
@@ -0,0 +1,59 @@
+package nbody;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+    One step of the integrator of the method, see Integrator, with the FlatQuadtree as solver.
+    The force calculations the method needs are part of the step, like in the simulation.
+
+    Every invocation starts from the initial state of the input with its accelerations, so the result does not
+    depend on the number of iterations (the bodies would otherwise evolve and leave the universe).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IntegrationBenchmark {
+
+    @Param({"galaxy10k", "galaxy20k", "galaxy30k", "random100k", "random1m"})
+    public String input;
+
+    @Param({"Euler", "Leapfrog", "VelocityVerlet", "Yoshida4", "BlockLeapfrog"})
+    public IntegrationMethod method;
+
+    private BodyStore initial;
+    private BodyStore bodies;
+    private GravitySolver solver;
+    private Integrator integrator;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.initial = Inputs.load(this.input);
+        this.solver = new FlatQuadtree();
+        this.solver.computeForces(this.initial);
+        this.bodies = new BodyStore(this.initial.size());
+        Simulation.integrationMethod = this.method;
+        this.integrator = Simulation.createIntegrator();
+    }
+
+    // The step takes milliseconds, so the copy per invocation does not disturb the measurement
+    @Setup(Level.Invocation)
+    public void restore() {
+        int n = this.initial.size();
+        this.initial.copyStateTo(this.bodies);
+        System.arraycopy(this.initial.ax, 0, this.bodies.ax, 0, n);
+        System.arraycopy(this.initial.ay, 0, this.bodies.ay, 0, n);
+        System.arraycopy(this.initial.az, 0, this.bodies.az, 0, n);
+    }
+
+    @Benchmark
+    public BodyStore step() {
+        this.integrator.step(this.bodies, this.solver, Simulation.dt);
+        return this.bodies;
+    }
+}
@@ -0,0 +1,75 @@
+package nbody;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The ForceKernel for one group: the accelerations of 'sources' point masses (and as many quadrupole nodes)
+    at 64 positions, like the interaction list of a group of the grouped walk.
+
+    pointMasses:    the point masses only
+    quadrupoles:    the quadrupole nodes only
+
+    The vector kernel needs a build with Java 17 or newer, the fork adds the incubator module.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g", "--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+
+    private static final int TARGETS = 64;
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    @Param({"64", "1024"})
+    public int sources;
+
+    private ForceKernel forceKernel;
+    private InteractionList list;
+    private final double[] targets = new double[3 * TARGETS];
+    private final double[] out = new double[3 * TARGETS];
+
+    @Setup
+    public void setup() {
+        if (this.kernel.equals("vector")) {
+            this.forceKernel = ForceKernel.INSTANCE;
+            if (this.forceKernel instanceof ScalarKernel) throw new IllegalStateException("The VectorKernel is not available");
+        } else {
+            this.forceKernel = new ScalarKernel();
+        }
+
+        Random random = new Random(42);
+        this.list = new InteractionList();
+        for (int k = 0; k < this.sources; k++) {
+            double x = random.nextGaussian(), y = random.nextGaussian(), z = random.nextGaussian();
+            this.list.add(x, y, z, random.nextDouble());
+            this.list.addQuadrupole(x, y, z, random.nextDouble(), 0.1, 0.02, -0.03, -0.05, 0.01, -0.05);
+        }
+        for (int t = 0; t < 3 * TARGETS; t++) this.targets[t] = 0.01 * random.nextGaussian();
+    }
+
+    @Benchmark
+    public double[] pointMasses() {
+        InteractionList list = this.list;
+        for (int t = 0; t < TARGETS; t++) {
+            this.forceKernel.pointMasses(list.x, list.y, list.z, list.m, 0, list.count,
+                    this.targets[3 * t], this.targets[3 * t + 1], this.targets[3 * t + 2], this.out, 3 * t);
+        }
+        return this.out;
+    }
+
+    @Benchmark
+    public double[] quadrupoles() {
+        for (int t = 0; t < TARGETS; t++) {
+            this.forceKernel.quadrupoles(this.list, 0, this.list.quadrupoleCount,
+                    this.targets[3 * t], this.targets[3 * t + 1], this.targets[3 * t + 2], this.out, 3 * t);
+        }
+        return this.out;
+    }
+}
@@ -0,0 +1,52 @@
+package nbody;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Loads a sample.
+
+    readGalaxy: CelestialBody.readGalaxy, i.e. the text parser and the views
+    text:       GalaxyReader.read
+    binary:     BinaryGalaxy.read of the sample converted in the setup
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadGalaxyBenchmark {
+
+    @Param({"galaxy10k", "galaxy20k", "galaxy30k"})
+    public String input;
+
+    private File text;
+    private File binary;
+
+    @Setup
+    public void setup() throws IOException {
+        this.text = Inputs.sample(this.input);
+        this.binary = File.createTempFile(this.input, BinaryGalaxy.EXTENSION);
+        this.binary.deleteOnExit();
+        BinaryGalaxy.write(GalaxyReader.read(this.text), this.binary);
+    }
+
+    @Benchmark
+    public CelestialBody[] readGalaxy() throws IOException {
+        return CelestialBody.readGalaxy(this.text);
+    }
+
+    @Benchmark
+    public BodyStore text() throws IOException {
+        return GalaxyReader.read(this.text);
+    }
+
+    @Benchmark
+    public BodyStore binary() throws IOException {
+        return BinaryGalaxy.read(this.binary);
+    }
+}
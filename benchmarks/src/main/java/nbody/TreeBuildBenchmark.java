@@ -0,0 +1,58 @@
+package nbody;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Builds the tree for all bodies, without the force calculation.
+    The tree is "Octree" (the object graph of the Octree class) or "<FlatTree>-<BuildMode>", e.g. FlatOctree-Morton.
+    With refit the flat trees are refitted (see Simulation.refitTree) after the bodies have been moved by a small
+    step, forwards and backwards in turns, so the bodies never drift away.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TreeBuildBenchmark {
+
+    @Param({"galaxy10k", "galaxy20k", "galaxy30k", "random100k", "random1m"})
+    public String input;
+
+    @Param({"Octree", "FlatOctree-Insert", "FlatOctree-Parallel", "FlatOctree-Morton",
+            "FlatQuadtree-Insert", "FlatQuadtree-Parallel", "FlatQuadtree-Morton"})
+    public String tree;
+
+    @Param({"false", "true"})
+    public boolean refit;
+
+    // Length of the step the bodies are moved by before every refit
+    private static final double DRIFT = 0.001;
+
+    private BodyStore bodies;
+    private CelestialBody[] views;
+    private FlatTree flatTree;
+    private double drift = DRIFT;
+
+    @Setup
+    public void setup() throws IOException {
+        this.bodies = Inputs.load(this.input);
+        this.views = this.bodies.views();
+        this.flatTree = Trees.flatTree(this.tree);
+        Simulation.refitTree = this.refit;
+    }
+
+    @Benchmark
+    public Object build() {
+        if (this.flatTree == null) return Trees.buildOctree(this.views);
+        if (this.refit) {
+            this.bodies.kickDrift(0, this.drift);
+            this.drift = -this.drift;
+        }
+        this.flatTree.build(this.bodies, Simulation.RADIUS);
+        return this.flatTree;
+    }
+}
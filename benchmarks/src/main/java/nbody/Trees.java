@@ -0,0 +1,33 @@
+package nbody;
+
+// Creates the trees named by the benchmark parameters
+final class Trees {
+
+    private Trees() { }
+
+    // Returns the flat tree for "<FlatTree>-<BuildMode>" and sets the build mode, null for "Octree"
+    static FlatTree flatTree(String name) {
+        if (name.equals("Octree")) return null;
+        String[] parts = name.split("-");
+        Simulation.buildMode = BuildMode.valueOf(parts[1]);
+        switch (parts[0]) {
+            case "FlatOctree":   return new FlatOctree();
+            case "FlatQuadtree": return new FlatQuadtree();
+            case "Fmm":          return new FmmSolver();
+            default: throw new IllegalArgumentException("Unknown tree " + name);
+        }
+    }
+
+    // Builds an Octree like the OctreeSolver
+    static Octree buildOctree(CelestialBody[] bodies) {
+        double radius = Simulation.RADIUS;
+        Vector3 upper = new Vector3(radius, radius, Simulation.enableZCoordinate ? radius : 0);
+        Vector3 lower = new Vector3(-radius, -radius, Simulation.enableZCoordinate ? -radius : 0);
+        Octree octree = new Octree(new BoundingBox3D(upper, lower));
+        for (CelestialBody body : bodies) {
+            if (octree.inBoundingBox(body)) octree.insert(body);
+        }
+        octree.computeCenterMasses();
+        return octree;
+    }
+}
@@ -0,0 +1,79 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+    The ForceKernel with the incubating Vector API, see ForceKernel for how it is built and enabled.
+    Every iteration calculates one interaction per lane of the preferred vector size of the CPU,
+    i.e. 4 with AVX2 and 8 with AVX-512. The remaining sources are calculated one by one.
+ */
+public class VectorKernel implements ForceKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final DoubleVector ONE = DoubleVector.broadcast(SPECIES, 1);
+
+    // Used for the remaining sources
+    private final ScalarKernel scalar = new ScalarKernel();
+
+    @Override
+    public void pointMasses(double[] x, double[] y, double[] z, double[] m, int from, int to,
+                            double px, double py, double pz, double[] out, int offset) {
+        DoubleVector fx = DoubleVector.zero(SPECIES);
+        DoubleVector fy = DoubleVector.zero(SPECIES);
+        DoubleVector fz = DoubleVector.zero(SPECIES);
+        int k = from;
+        for (int bound = from + SPECIES.loopBound(to - from); k < bound; k += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, x, k).sub(px);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, y, k).sub(py);
+            DoubleVector dz = DoubleVector.fromArray(SPECIES, z, k).sub(pz);
+            DoubleVector r2 = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+            VectorMask<Double> self = r2.eq(0);
+            DoubleVector inv = ONE.div(r2.sqrt());
+            DoubleVector f = DoubleVector.fromArray(SPECIES, m, k).mul(inv).mul(inv).mul(inv).blend(0, self);
+            fx = f.fma(dx, fx);
+            fy = f.fma(dy, fy);
+            fz = f.fma(dz, fz);
+        }
+        out[offset] += fx.reduceLanes(VectorOperators.ADD);
+        out[offset + 1] += fy.reduceLanes(VectorOperators.ADD);
+        out[offset + 2] += fz.reduceLanes(VectorOperators.ADD);
+        if (k < to) this.scalar.pointMasses(x, y, z, m, k, to, px, py, pz, out, offset);
+    }
+
+    @Override
+    public void quadrupoles(InteractionList list, int from, int to, double px, double py, double pz, double[] out, int offset) {
+        DoubleVector fx = DoubleVector.zero(SPECIES);
+        DoubleVector fy = DoubleVector.zero(SPECIES);
+        DoubleVector fz = DoubleVector.zero(SPECIES);
+        int k = from;
+        for (int bound = from + SPECIES.loopBound(to - from); k < bound; k += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, list.qx, k).sub(px);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, list.qy, k).sub(py);
+            DoubleVector dz = DoubleVector.fromArray(SPECIES, list.qz, k).sub(pz);
+            DoubleVector inv2 = ONE.div(dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz)));
+            DoubleVector inv = inv2.sqrt();
+            DoubleVector inv3 = inv.mul(inv2);
+            DoubleVector inv5 = inv3.mul(inv2);
+            DoubleVector qxx = DoubleVector.fromArray(SPECIES, list.qxx, k);
+            DoubleVector qxy = DoubleVector.fromArray(SPECIES, list.qxy, k);
+            DoubleVector qxz = DoubleVector.fromArray(SPECIES, list.qxz, k);
+            DoubleVector qyy = DoubleVector.fromArray(SPECIES, list.qyy, k);
+            DoubleVector qyz = DoubleVector.fromArray(SPECIES, list.qyz, k);
+            DoubleVector qzz = DoubleVector.fromArray(SPECIES, list.qzz, k);
+            // d = -r, so Q r = -Q d and r^T Q r = d^T Q d
+            DoubleVector qx = qxx.mul(dx).add(qxy.mul(dy)).add(qxz.mul(dz));
+            DoubleVector qy = qxy.mul(dx).add(qyy.mul(dy)).add(qyz.mul(dz));
+            DoubleVector qz = qxz.mul(dx).add(qyz.mul(dy)).add(qzz.mul(dz));
+            DoubleVector g = dx.mul(qx).add(dy.mul(qy)).add(dz.mul(qz)).mul(inv5).mul(inv2).mul(2.5);
+            DoubleVector f = DoubleVector.fromArray(SPECIES, list.qm, k).mul(inv3).add(g);
+            fx = f.fma(dx, fx).sub(qx.mul(inv5));
+            fy = f.fma(dy, fy).sub(qy.mul(inv5));
+            fz = f.fma(dz, fz).sub(qz.mul(inv5));
+        }
+        out[offset] += fx.reduceLanes(VectorOperators.ADD);
+        out[offset + 1] += fy.reduceLanes(VectorOperators.ADD);
+        out[offset + 2] += fz.reduceLanes(VectorOperators.ADD);
+        if (k < to) this.scalar.quadrupoles(list, k, to, px, py, pz, out, offset);
+    }
+}
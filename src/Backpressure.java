@@ -0,0 +1,6 @@
+// Defines what the TrajectoryWriter does if the writer thread falls behind and all pooled buffers are full
+public enum Backpressure {
+    Block,          // The simulation waits until a buffer was written
+    Drop,           // The frame is not written, the number of dropped frames is counted
+    Spill           // An extra buffer is allocated outside of the pool, so nothing is lost but memory grows
+}
@@ -0,0 +1,180 @@
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/*
+    Binary galaxy format, loaded by memory mapping the file.
+
+    All values are little-endian. The header has 32 bytes, so all columns are aligned to 8 bytes:
+
+    offset  size    content
+    0       4       magic "NBDY"
+    4       4       version, currently 1
+    8       4       flags, bit 0: the file has z columns
+    12      4       number of bodies n
+    16      8       radius of the universe
+    24      8       reserved, 0
+
+    followed by the columns px, py, [pz], vx, vy, [vz], mass (n doubles each) and the colors (n ints, 0xRRGGBB).
+    The radius of the bodies is not stored, it is calculated from the radius of the universe like for text files.
+
+    Usage as converter: java BinaryGalaxy <galaxy.txt> <galaxy.nbody>
+ */
+public class BinaryGalaxy {
+
+    public static final String EXTENSION = ".nbody";
+    public static final int VERSION = 1;
+    public static final int FLAG_3D = 1;
+
+    private static final int MAGIC = 'N' | 'B' << 8 | 'D' << 16 | 'Y' << 24;
+    private static final int HEADER_SIZE = 32;
+
+    // Maximum size of one mapping, a MappedByteBuffer is indexed with ints
+    private static final long MAX_MAPPING = Integer.MAX_VALUE & ~7L;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java BinaryGalaxy <galaxy.txt> <galaxy" + EXTENSION + ">");
+            System.exit(1);
+        }
+        BodyStore bodies = GalaxyReader.read(new File(args[0]));
+        write(bodies, new File(args[1]));
+        System.out.println("Converted " + bodies.size() + " bodies");
+    }
+
+    // Returns true if the file starts with the magic number of this format
+    public static boolean isBinary(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) { }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    // Reads a binary galaxy file. Sets Simulation.RADIUS to the radius of the file like CelestialBody.readGalaxy
+    public static BodyStore read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_SIZE, channel.size()))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC) throw new IOException(file + ": not a binary galaxy file");
+            int version = header.getInt(4);
+            if (version != VERSION) throw new IOException(file + ": unsupported version " + version);
+            int flags = header.getInt(8);
+            int n = header.getInt(12);
+            boolean is3D = (flags & FLAG_3D) != 0;
+            if (n < 0) throw new IOException(file + ": negative number of bodies");
+            if (channel.size() < fileSize(n, is3D)) throw new IOException(file + ": file is truncated");
+            Simulation.RADIUS = header.getDouble(16);
+
+            BodyStore bodies = new BodyStore(n);
+            long offset = HEADER_SIZE;
+            offset = readColumn(channel, offset, bodies.px, n);
+            offset = readColumn(channel, offset, bodies.py, n);
+            if (is3D) offset = readColumn(channel, offset, bodies.pz, n);
+            offset = readColumn(channel, offset, bodies.vx, n);
+            offset = readColumn(channel, offset, bodies.vy, n);
+            if (is3D) offset = readColumn(channel, offset, bodies.vz, n);
+            offset = readColumn(channel, offset, bodies.mass, n);
+
+            HashMap<Integer, Color> colors = new HashMap<>();
+            int[] rgb = new int[n];
+            readColumn(channel, offset, rgb, n);
+            double radius = CelestialBody.avgBodyToUniverseRadius();
+            for (int i = 0; i < n; i++) {
+                bodies.color[i] = colors.computeIfAbsent(rgb[i] & 0xFFFFFF, Color::new);
+                bodies.radius[i] = radius;
+            }
+            return bodies;
+        }
+    }
+
+    // Writes the bodies to a binary galaxy file. The z columns are only written if a body leaves the plane z = 0
+    public static void write(BodyStore bodies, File file) throws IOException {
+        int n = bodies.size();
+        boolean is3D = !bodies.isPlanar();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(is3D ? FLAG_3D : 0).putInt(n).putDouble(Simulation.RADIUS).putLong(0);
+            header.flip();
+            while (header.hasRemaining()) channel.write(header);
+
+            long offset = HEADER_SIZE;
+            offset = writeColumn(channel, offset, bodies.px, n);
+            offset = writeColumn(channel, offset, bodies.py, n);
+            if (is3D) offset = writeColumn(channel, offset, bodies.pz, n);
+            offset = writeColumn(channel, offset, bodies.vx, n);
+            offset = writeColumn(channel, offset, bodies.vy, n);
+            if (is3D) offset = writeColumn(channel, offset, bodies.vz, n);
+            offset = writeColumn(channel, offset, bodies.mass, n);
+
+            int[] rgb = new int[n];
+            for (int i = 0; i < n; i++) rgb[i] = bodies.color[i].getRGB() & 0xFFFFFF;
+            writeColumn(channel, offset, rgb, n);
+        }
+    }
+
+    // Returns the size of a file with n bodies
+    private static long fileSize(int n, boolean is3D) {
+        return HEADER_SIZE + (long) n * ((is3D ? 7 : 5) * Double.BYTES + Integer.BYTES);
+    }
+
+    // ****************** //
+    //  Columns           //
+    // ****************** //
+
+    // The read functions are also used for the checkpoints, see Checkpoint
+
+    // Copies n doubles starting at offset from the mapped file into the array, returns the offset after them
+    // With a little-endian CPU the bulk get is a plain memory copy from the page cache
+    static long readColumn(FileChannel channel, long offset, double[] column, int n) throws IOException {
+        for (int i = 0; i < n; ) {
+            int count = (int) Math.min(n - i, MAX_MAPPING / Double.BYTES);
+            map(channel, FileChannel.MapMode.READ_ONLY, offset, (long) count * Double.BYTES).asDoubleBuffer().get(column, i, count);
+            offset += (long) count * Double.BYTES;
+            i += count;
+        }
+        return offset;
+    }
+
+    static long readColumn(FileChannel channel, long offset, int[] column, int n) throws IOException {
+        for (int i = 0; i < n; ) {
+            int count = (int) Math.min(n - i, MAX_MAPPING / Integer.BYTES);
+            map(channel, FileChannel.MapMode.READ_ONLY, offset, (long) count * Integer.BYTES).asIntBuffer().get(column, i, count);
+            offset += (long) count * Integer.BYTES;
+            i += count;
+        }
+        return offset;
+    }
+
+    private static long writeColumn(FileChannel channel, long offset, double[] column, int n) throws IOException {
+        for (int i = 0; i < n; ) {
+            int count = (int) Math.min(n - i, MAX_MAPPING / Double.BYTES);
+            map(channel, FileChannel.MapMode.READ_WRITE, offset, (long) count * Double.BYTES).asDoubleBuffer().put(column, i, count);
+            offset += (long) count * Double.BYTES;
+            i += count;
+        }
+        return offset;
+    }
+
+    private static long writeColumn(FileChannel channel, long offset, int[] column, int n) throws IOException {
+        for (int i = 0; i < n; ) {
+            int count = (int) Math.min(n - i, MAX_MAPPING / Integer.BYTES);
+            map(channel, FileChannel.MapMode.READ_WRITE, offset, (long) count * Integer.BYTES).asIntBuffer().put(column, i, count);
+            offset += (long) count * Integer.BYTES;
+            i += count;
+        }
+        return offset;
+    }
+
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long offset, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, offset, size);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
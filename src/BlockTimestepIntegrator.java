@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/*
+    Kick-drift-kick leapfrog with individual (block) time steps.
+
+    Every body is put into a bin k by its acceleration and moves with the time step dt / 2^k. The bins form a
+    hierarchy: the steps of bin k + 1 end at the same times as the steps of bin k and halfway in between.
+    A body only gets new forces at the end of its own step, so in a clustered system the few bodies in tight
+    orbits get many small steps while the rest of the bodies are calculated once per dt.
+
+    For one step of dt, which is divided into 2^(bins - 1) ticks:
+
+    1. the bodies at the start of their step get the first half kick with their own step
+    2. all bodies drift to the next time at which a step ends
+    3. the tree is built from all positions, the bodies at the end of their step get new forces,
+       the second half kick and a new bin
+
+    until all bodies have arrived at dt. The time step of a body is accuracy * sqrt(length / |a|) with
+    length = RADIUS / 1000 (see Simulation.blockTimestepAccuracy), rounded down to the step of its bin.
+    A body may always move to a smaller step, but only to a larger one if the current time is a multiple
+    of the larger step, so the steps of a bin always start at the same time.
+ */
+public class BlockTimestepIntegrator implements Integrator {
+
+    private final int bins;             // Number of bins, bin k has the step dt / 2^k
+    private final double accuracy;
+
+    private BodyStore bodies;           // The store whose accelerations belong to its current positions
+    private int[] bin = new int[0];     // Bin of every body
+    private int[] active = new int[0];  // Bodies at the end of their step
+    private final int[] occupancy;      // Number of bodies in every bin
+
+    // Constructor, at most 'bins' bins
+    public BlockTimestepIntegrator(int bins, double accuracy) {
+        if (bins < 1 || bins > 31) throw new IllegalArgumentException("The number of bins must be between 1 and 31");
+        if (accuracy <= 0) throw new IllegalArgumentException("The accuracy must be positive");
+        this.bins = bins;
+        this.accuracy = accuracy;
+        this.occupancy = new int[bins];
+    }
+
+    @Override
+    public void step(BodyStore bodies, GravitySolver solver, double dt) {
+        int n = bodies.size();
+        int ticks = 1 << (this.bins - 1);    // Ticks of dt, bin k has the step ticks >> k
+        double tick = dt / ticks;
+
+        // The accelerations of a new store (e.g. resumed from a checkpoint) have never been calculated
+        if (this.bodies != bodies || this.bin.length != n) {
+            this.bin = new int[n];
+            this.active = new int[n];
+            solver.computeForces(bodies);
+            Arrays.fill(this.occupancy, 0);
+            for (int i = 0; i < n; i++) {
+                this.bin[i] = binOf(bodies, i, dt);
+                this.occupancy[this.bin[i]]++;
+            }
+            this.bodies = bodies;
+        }
+
+        int time = 0;
+        while (time < ticks) {
+            int now = time;
+            halfKick(bodies, now, ticks, tick);
+
+            // The next time at which the steps of a bin end
+            int next = ticks;
+            for (int k = 0; k < this.bins; k++) {
+                if (this.occupancy[k] == 0) continue;
+                int step = ticks >> k;
+                next = Math.min(next, (now / step + 1) * step);
+            }
+            bodies.drift((next - now) * tick);
+            time = next;
+
+            // All bodies arrived at the new time, the ones at the end of their step get new forces
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if (time % (ticks >> this.bin[i]) == 0) this.active[count++] = i;
+            }
+            solver.computeForces(bodies, this.active, count);
+            halfKick(bodies, time, ticks, tick);
+
+            // New bins for the active bodies, a larger step has to start at a multiple of itself
+            for (int k = 0; k < count; k++) {
+                int i = this.active[k];
+                int target = binOf(bodies, i, dt);
+                while (target < this.bin[i] && time % (ticks >> target) != 0) target++;
+                this.occupancy[this.bin[i]]--;
+                this.occupancy[target]++;
+                this.bin[i] = target;
+            }
+        }
+    }
+
+    // Kicks the velocities of the bodies whose step starts or ends at the time by half of their step
+    private void halfKick(BodyStore bodies, int time, int ticks, double tick) {
+        long start = Metrics.start();
+        int[] bin = this.bin;
+        Parallel.forRange(0, bodies.size(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int step = ticks >> bin[i];
+                if (time % step != 0 || !bodies.inUniverse(i)) continue;
+                double kick = step * tick / 2;
+                bodies.vx[i] += kick * bodies.ax[i];
+                bodies.vy[i] += kick * bodies.ay[i];
+                bodies.vz[i] += kick * bodies.az[i];
+            }
+        });
+        Metrics.stop(Metrics.Phase.Integration, start);
+    }
+
+    // Returns the bin of body i for its current acceleration
+    private int binOf(BodyStore bodies, int i, double dt) {
+        double a = Math.sqrt(bodies.ax[i] * bodies.ax[i] + bodies.ay[i] * bodies.ay[i] + bodies.az[i] * bodies.az[i]);
+        if (a == 0) return 0;
+        double step = this.accuracy * Math.sqrt(Simulation.RADIUS / 1000 / a);
+        double ratio = Math.abs(dt) / step;
+        if (!(ratio > 1)) return 0;
+        int k = Math.getExponent(ratio);
+        if (ratio > Math.scalb(1.0, k)) k++;    // Rounded up to the next power of two
+        return Math.min(k, this.bins - 1);
+    }
+
+    // Returns the number of bodies in every bin after the last step
+    public int[] getOccupancy() {
+        return this.occupancy.clone();
+    }
+}
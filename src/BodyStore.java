@@ -0,0 +1,226 @@
+import java.awt.*;
+
+/*
+    Stores the state of all celestial bodies of a simulation as structure of arrays.
+    Every attribute has its own array, so the hot loops (tree build, force calculation, update, drawing)
+    read the positions of consecutive bodies from consecutive memory instead of chasing a
+    CelestialBody and three Vector3 references per body.
+
+    A CelestialBody is a view on one index of a store, see CelestialBody.
+ */
+public class BodyStore {
+
+    // The arrays are accessed directly by the tree and the renderer
+    double[] px, py, pz;        // Positions
+    double[] vx, vy, vz;        // Velocities
+    double[] ax, ay, az;        // Accelerations, i.e. the force applied on the body divided by its mass
+    double[] mass;              // Masses of the bodies
+    double[] radius;            // Radii of the bodies used for drawing
+    Color[] color;              // Colors for the drawing
+
+    private int size;           // Number of bodies in this store
+
+    // Constructor, creates a store for n bodies which are all at the origin and have no mass
+    public BodyStore(int n) {
+        this.size = n;
+        this.px = new double[n];
+        this.py = new double[n];
+        this.pz = new double[n];
+        this.vx = new double[n];
+        this.vy = new double[n];
+        this.vz = new double[n];
+        this.ax = new double[n];
+        this.ay = new double[n];
+        this.az = new double[n];
+        this.mass = new double[n];
+        this.radius = new double[n];
+        this.color = new Color[n];
+    }
+
+    // Returns the number of bodies
+    public int size() {
+        return this.size;
+    }
+
+    // Sets all attributes of body i and resets its acceleration
+    public void set(int i, double px, double py, double pz, double vx, double vy, double vz, double mass, double radius, Color color) {
+        this.px[i] = px;
+        this.py[i] = py;
+        this.pz[i] = pz;
+        this.vx[i] = vx;
+        this.vy[i] = vy;
+        this.vz[i] = vz;
+        this.ax[i] = 0;
+        this.ay[i] = 0;
+        this.az[i] = 0;
+        this.mass[i] = mass;
+        this.radius[i] = radius;
+        this.color[i] = color;
+    }
+
+    // Returns true if all bodies lie in the plane z = 0 and stay there, i.e. have no z velocity
+    public boolean isPlanar() {
+        for (int i = 0; i < this.size; i++) {
+            if (this.pz[i] != 0 || this.vz[i] != 0) return false;
+        }
+        return true;
+    }
+
+    // Returns a CelestialBody view on body i
+    public CelestialBody view(int i) {
+        return new CelestialBody(this, i);
+    }
+
+    // Returns views on all bodies of this store
+    public CelestialBody[] views() {
+        CelestialBody[] bodies = new CelestialBody[this.size];
+        for (int i = 0; i < this.size; i++) bodies[i] = view(i);
+        return bodies;
+    }
+
+    // Resets the acceleration of body i to 0 because we need to calculate the force fresh when the body moved
+    public void resetForce(int i) {
+        this.ax[i] = 0;
+        this.ay[i] = 0;
+        this.az[i] = 0;
+    }
+
+    // Adds the given acceleration to body i
+    public void addAcceleration(int i, double ax, double ay, double az) {
+        this.ax[i] += ax;
+        this.ay[i] += ay;
+        this.az[i] += az;
+    }
+
+    // Calculate the force applied on body i by a body with mass m at (x, y, z) and add it to the acceleration
+    // Same formula as G * m * m_i / r^2 in the direction of the other body divided by m_i,
+    // but without temporary vectors: one square root and one reciprocal per interaction
+    public void accumulateForce(int i, double x, double y, double z, double m) {
+        double dx = x - this.px[i];
+        double dy = y - this.py[i];
+        double dz = z - this.pz[i];
+        double inv = 1 / Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double f = Simulation.G * m * inv * inv * inv;
+        this.ax[i] += f * dx;
+        this.ay[i] += f * dy;
+        this.az[i] += f * dz;
+    }
+
+    // Returns true if body i is inside the bounds of the bounding box
+    public boolean in(int i, BoundingBox3D box) {
+        return box.contains(this.px[i], this.py[i], this.pz[i]);
+    }
+
+    // Returns true if body i is inside the universe, i.e. the cube with the half width Simulation.RADIUS
+    // around the origin. The z coordinate is only checked if it is enabled
+    public boolean inUniverse(int i) {
+        double radius = Simulation.RADIUS;
+        if (Math.abs(this.px[i]) > radius || Math.abs(this.py[i]) > radius) return false;
+        return !Simulation.enableZCoordinate || Math.abs(this.pz[i]) <= radius;
+    }
+
+    // Changes the velocities of all bodies inside the universe by kick * acceleration, then moves them
+    // by drift * velocity. The steps of the integrators are made of these passes, see Integrator
+    public void kickDrift(double kick, double drift) {
+        long start = Metrics.start();
+        Parallel.forRange(0, this.size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                if (!inUniverse(i)) continue;
+                this.vx[i] += kick * this.ax[i];
+                this.vy[i] += kick * this.ay[i];
+                this.vz[i] += kick * this.az[i];
+                this.px[i] += drift * this.vx[i];
+                this.py[i] += drift * this.vy[i];
+                this.pz[i] += drift * this.vz[i];
+            }
+        });
+        Metrics.stop(Metrics.Phase.Integration, start);
+    }
+
+    // Moves all bodies inside the universe by drift * velocity
+    public void drift(double drift) {
+        long start = Metrics.start();
+        Parallel.forRange(0, this.size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                if (!inUniverse(i)) continue;
+                this.px[i] += drift * this.vx[i];
+                this.py[i] += drift * this.vy[i];
+                this.pz[i] += drift * this.vz[i];
+            }
+        });
+        Metrics.stop(Metrics.Phase.Integration, start);
+    }
+
+    // Changes the velocities of all bodies inside the universe by kick * acceleration
+    public void kick(double kick) {
+        long start = Metrics.start();
+        Parallel.forRange(0, this.size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                if (!inUniverse(i)) continue;
+                this.vx[i] += kick * this.ax[i];
+                this.vy[i] += kick * this.ay[i];
+                this.vz[i] += kick * this.az[i];
+            }
+        });
+        Metrics.stop(Metrics.Phase.Integration, start);
+    }
+
+    // Copies the complete state of all bodies (everything but the accelerations) into the target.
+    // The target must have the same size
+    public void copyStateTo(BodyStore target) {
+        System.arraycopy(this.vx, 0, target.vx, 0, this.size);
+        System.arraycopy(this.vy, 0, target.vy, 0, this.size);
+        System.arraycopy(this.vz, 0, target.vz, 0, this.size);
+        System.arraycopy(this.mass, 0, target.mass, 0, this.size);
+        copyDrawingStateTo(target);
+    }
+
+    // Copies the positions, radii and colors of all bodies, i.e. everything needed for drawing, into the target.
+    // The target must have the same size
+    public void copyDrawingStateTo(BodyStore target) {
+        System.arraycopy(this.px, 0, target.px, 0, this.size);
+        System.arraycopy(this.py, 0, target.py, 0, this.size);
+        System.arraycopy(this.pz, 0, target.pz, 0, this.size);
+        System.arraycopy(this.radius, 0, target.radius, 0, this.size);
+        System.arraycopy(this.color, 0, target.color, 0, this.size);
+    }
+
+    // Draws all bodies as single points. Radius is predetermined by StdDraw
+    public void drawAsPoints() {
+        for (int i = 0; i < this.size; i++) {
+            StdDraw.setPenColor(this.color[i]);
+            StdDraw.point(this.px[i], this.py[i]);
+        }
+    }
+
+    // Draws all bodies as dots. The radius of the dot is in relation to the radius of the celestial body
+    public void drawWithRadius() {
+        for (int i = 0; i < this.size; i++) {
+            StdDraw.setPenColor(this.color[i]);
+            StdDraw.filledCircle(this.px[i], this.py[i], this.radius[i]);
+        }
+    }
+
+    // ****************** //
+    //  Static methods    //
+    // ****************** //
+
+    // Returns a store containing the given bodies in the same order and turns the bodies into views on it.
+    // If the bodies already are the views of one store, that store is returned
+    public static BodyStore gather(CelestialBody[] bodies) {
+        if (bodies.length > 0) {
+            BodyStore store = bodies[0].getStore();
+            boolean shared = store.size() == bodies.length;
+            for (int i = 0; shared && i < bodies.length; i++) {
+                shared = bodies[i].getStore() == store && bodies[i].getIndex() == i;
+            }
+            if (shared) return store;
+        }
+
+        BodyStore store = new BodyStore(bodies.length);
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i].moveTo(store, i);
+        }
+        return store;
+    }
+}
@@ -56,18 +56,15 @@ public class BoundingBox3D {
 
     */
     public int getOctPosition(Vector3 position) {
-        double midx = this.center.getX();
-        double midy = this.center.getY();
-        double midz = this.center.getZ();
-
-        double x = position.getX();
-        double y = position.getY();
-        double z = position.getZ();
+        return getOctPosition(position.getX(), position.getY(), position.getZ());
+    }
 
+    // Same as above, for a position given by its coordinates
+    public int getOctPosition(double x, double y, double z) {
         int oct = 0;
-        if(x >= midx) oct |= 4;
-        if(y >= midy) oct |= 2;
-        if(Simulation.enableZCoordinate && z >= midz) oct |= 1;
+        if(x >= this.center.getX()) oct |= 4;
+        if(y >= this.center.getY()) oct |= 2;
+        if(Simulation.enableZCoordinate && z >= this.center.getZ()) oct |= 1;
         return oct;
     }
 
@@ -76,6 +73,12 @@ public class BoundingBox3D {
         return position.greaterOrEqualThan(this.lower) && position.lessOrEqualThan(this.upper);
     }
 
+    // Same as above, for a position given by its coordinates
+    public boolean contains(double x, double y, double z) {
+        return x >= this.lower.getX() && y >= this.lower.getY() && z >= this.lower.getZ()
+                && x <= this.upper.getX() && y <= this.upper.getY() && z <= this.upper.getZ();
+    }
+
     // Draws the bounding box
     public void draw(Color color) {
         this.center.drawAsSquare(this.length / 2, color);
@@ -0,0 +1,6 @@
+// Defines how the FlatOctree is built for every step
+public enum BuildMode {
+    Insert,         // Every body is inserted from the root, one after another
+    Parallel,       // The bodies are partitioned into the top level octants and each subtree is built by its own task
+    Morton          // The bodies are sorted by their Morton code (Z-order) and the tree is built linearly from the sorted codes
+}
@@ -1,97 +1,146 @@
 import java.awt.*;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Locale;
 import java.util.Random;
-import java.util.Scanner;
 
 // This class represents celestial bodies like stars, planets, asteroids, etc..
+// The state of the body is kept in a BodyStore, this class is a view on one index of the store
 public class CelestialBody {
 
-    private Vector3 position;       // The center coordinates
-    private Vector3 velocity;       // The current velocity of this body
-    private double mass;            // Mass of the body
-    private double radius;          // Radius of the body used for drawing
-    private Color color;            // Color for the drawing
-    private Vector3 force;          // The force applied on this body
+    private BodyStore store;        // The store holding position, velocity, mass, radius, color and force
+    private int index;              // The index of this body in the store
 
     // Main constructor for body
     public CelestialBody(Vector3 position, Vector3 velocity, double mass, double radius, Color color) {
-        this.position = position;
-        this.velocity = velocity;
-        this.mass   = mass;
-        this.radius = radius;
-        this.color  = color;
-        this.force = new Vector3();
+        this(position.getX(), position.getY(), position.getZ(), velocity.getX(), velocity.getY(), velocity.getZ(), mass, radius, color);
     }
 
-    // Alternative constructor
+    // Alternative constructor, the body gets its own store
     public CelestialBody(double px, double py, double pz, double vx, double vy, double vz, double mass, double radius, Color color) {
-        this(new Vector3(px, py, pz), new Vector3(vx, vy, vz), mass, radius, color);
+        this.store = new BodyStore(1);
+        this.index = 0;
+        this.store.set(0, px, py, pz, vx, vy, vz, mass, radius, color);
+    }
+
+    // View constructor, see BodyStore.view
+    CelestialBody(BodyStore store, int index) {
+        this.store = store;
+        this.index = index;
     }
 
     // Calculate the force applied on this body by body b and add it to the force vector
     public void calculateForce(CelestialBody b) {
-        Vector3 direction = b.position.minus(this.position);
-        double r = direction.length();
-        direction.normalize();
-        double F = Simulation.G * b.mass * this.mass / (r * r);
-        this.force = direction.times(F).plus(force);
+        BodyStore s = b.store;
+        int j = b.index;
+        this.store.accumulateForce(this.index, s.px[j], s.py[j], s.pz[j], s.mass[j]);
+    }
+
+    // Calculate the force applied on this body by a (pseudo) body with mass m at (x, y, z) and add it to the force vector
+    public void calculateForce(double x, double y, double z, double m) {
+        this.store.accumulateForce(this.index, x, y, z, m);
+    }
+
+    // Adds the given force to the force vector of this body
+    public void addForce(double fx, double fy, double fz) {
+        double m = this.getMass();
+        this.store.addAcceleration(this.index, fx / m, fy / m, fz / m);
     }
 
     // Returns the euclidean distance from this body to body b
     public double distanceTo(CelestialBody b) {
-        return this.position.distanceTo(b.position);
+        double dx = this.store.px[this.index] - b.store.px[b.index];
+        double dy = this.store.py[this.index] - b.store.py[b.index];
+        double dz = this.store.pz[this.index] - b.store.pz[b.index];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    // Returns the euclidean distance from this body to the point (x, y, z)
+    public double distanceTo(double x, double y, double z) {
+        return Math.sqrt(distanceSquaredTo(x, y, z));
+    }
+
+    // Returns the squared euclidean distance from this body to the point (x, y, z)
+    public double distanceSquaredTo(double x, double y, double z) {
+        double dx = this.store.px[this.index] - x;
+        double dy = this.store.py[this.index] - y;
+        double dz = this.store.pz[this.index] - z;
+        return dx * dx + dy * dy + dz * dz;
     }
 
     // Resets the force to 0 because we need to calculate the force fresh when the body moved
     public void resetForces() {
-        this.force.reset();
+        this.store.resetForce(this.index);
     }
 
-    // Returns true if the body is in the bounds of the bounding box
-    public boolean in(BoundingBox3D box) {
-        return box.contains(this.position);
+    // Returns the position of this body
+    public Vector3 getPosition() {
+        return new Vector3(this.store.px[this.index], this.store.py[this.index], this.store.pz[this.index]);
     }
 
-    // Returns the octant position index of the body in the bounding box
-    public int octPositionIn(BoundingBox3D box) {
-        return box.getOctPosition(this.position);
+    // Returns the velocity of this body
+    public Vector3 getVelocity() {
+        return new Vector3(this.store.vx[this.index], this.store.vy[this.index], this.store.vz[this.index]);
     }
 
-    // delta t is the time quantum used to accelerate or deccelerate the simulation
-    // This is based on the "leapfrog" method
-    public void update(double dt) {
-        this.velocity = this.force.times(dt / this.mass).plus(this.velocity);   // vx += dt * fx / mass...
-        this.position = this.velocity.times(dt).plus(this.position);            // vx += dt * vx...
+    // Returns the mass of this body
+    public double getMass() {
+        return this.store.mass[this.index];
     }
 
-    // Combine two bodies together to create a pseudo body, ie update center of mass and total mass of body
-    // Velocity and radius are pretty much ignored since we only create a pseudobody for center mass and total mass calculation
-    public CelestialBody pseudoBody(CelestialBody b) {
-        CelestialBody a = this;
-        double combinedMass = a.mass + b.mass;
-        Vector3 combinedPosition = a.position.times(a.mass).plus(b.position.times(b.mass)).divided(combinedMass);
-        CelestialBody combinedBody = new CelestialBody(combinedPosition, a.velocity, combinedMass, a.radius, a.color);
-        return combinedBody;
+    // Returns the color of this body
+    public Color getColor() {
+        return this.store.color[this.index];
+    }
+
+    // Returns the store this body is a view on
+    public BodyStore getStore() {
+        return this.store;
+    }
+
+    // Returns the index of this body in its store
+    public int getIndex() {
+        return this.index;
+    }
+
+    // Copies this body to index i of the given store and turns this body into a view on it
+    void moveTo(BodyStore store, int i) {
+        BodyStore s = this.store;
+        int j = this.index;
+        store.set(i, s.px[j], s.py[j], s.pz[j], s.vx[j], s.vy[j], s.vz[j], s.mass[j], s.radius[j], s.color[j]);
+        store.addAcceleration(i, s.ax[j], s.ay[j], s.az[j]);
+        this.store = store;
+        this.index = i;
+    }
+
+    // Returns true if the body is in the bounds of the bounding box
+    public boolean in(BoundingBox3D box) {
+        return this.store.in(this.index, box);
+    }
+
+    // Returns the octant position index of the body in the bounding box
+    public int octPositionIn(BoundingBox3D box) {
+        return box.getOctPosition(this.store.px[this.index], this.store.py[this.index], this.store.pz[this.index]);
     }
 
     // Draws the celestial body as a single point. Radius is predetermined by StdDraw
     public void drawAsPoint() {
-        this.position.drawAsPoint(this.color);
+        this.getPosition().drawAsPoint(this.getColor());
     }
 
     // Draws the celestial body to the current StdDraw canvas as a dot using 'color' of this body.
     // The radius of the dot is in relation to the radius of the celestial body
     public void drawWithRadius() {
-        this.position.drawAsDot(this.radius, this.color);
+        this.getPosition().drawAsDot(this.store.radius[this.index], this.getColor());
     }
 
     // Mainly used for displaying the center masses
     public void drawWithDepthRatio(int depth) {
-        this.position.drawAsDot((avgBodyToUniverseRadius() * 10 / (depth + 1)), Color.pink);
+        this.getPosition().drawAsDot((avgBodyToUniverseRadius() * 10 / (depth + 1)), Color.pink);
     }
 
 
@@ -140,33 +189,25 @@ public class CelestialBody {
     }
 
     // Reads a galaxy from the "samples" folder and returns the bodies
-    public static CelestialBody[] readGalaxy(File file) throws FileNotFoundException {
-        Scanner sc = new Scanner(file);
-        int n = 0;
-        int i = 0;
-        int j = 0;
-        CelestialBody[] bodies = new CelestialBody[n];
-        while (sc.hasNextLine()) {
-            if (i == 0) { n = Integer.parseInt(sc.nextLine()); bodies = new CelestialBody[n];}
-            else if (i == 1) Simulation.RADIUS = Double.parseDouble(sc.nextLine());
-            else {
-                String[] split = sc.nextLine().split(" ");
-                double px = Double.parseDouble(split[0]);
-                double py = Double.parseDouble(split[1]);
-                double vx = Double.parseDouble(split[2]);
-                double vy = Double.parseDouble(split[3]);
-                double mass = Double.parseDouble(split[4]);
-                // index 7 is a whitespace
-                int red     = Integer.parseInt(split[6]);
-                int green   = Integer.parseInt(split[7]);
-                int blue    = Integer.parseInt(split[8]);
-                Color color = new Color(red, green, blue);
-                bodies[j]   = new CelestialBody(px, py, 0, vx, vy, 0, mass, avgBodyToUniverseRadius(), color);
-                j += 1;
+    // Text files are parsed by the GalaxyReader, binary files are mapped by BinaryGalaxy
+    public static CelestialBody[] readGalaxy(File file) throws IOException {
+        BodyStore bodies = BinaryGalaxy.isBinary(file) ? BinaryGalaxy.read(file) : GalaxyReader.read(file);
+        return bodies.views();
+    }
+
+    // Writes the bodies in the format of the "samples" folder, so the file can be read again by readGalaxy.
+    // The format has no z coordinates, they are dropped
+    public static void writeGalaxy(BodyStore bodies, File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println(bodies.size());
+            out.println(String.format(Locale.ROOT, "%.5E", Simulation.RADIUS));
+            for (int i = 0; i < bodies.size(); i++) {
+                Color color = bodies.color[i];
+                out.println(String.format(Locale.ROOT, "%.5E %.5E %.5E %.5E %.5E  %d %d %d",
+                        bodies.px[i], bodies.py[i], bodies.vx[i], bodies.vy[i], bodies.mass[i],
+                        color.getRed(), color.getGreen(), color.getBlue()));
             }
-            i += 1;
         }
-        return bodies;
     }
 
     // Calculate the avg body radius based on the universe radius to windows ratio
@@ -0,0 +1,165 @@
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/*
+    The complete state of a running simulation: all bodies, the step, dt and the radius of the universe.
+    Checkpoints are written by the CheckpointWriter and used to resume a simulation.
+
+    The file is little-endian with a header of 48 bytes:
+
+    offset  size    content
+    0       4       magic "NBCK"
+    4       4       version, currently 1
+    8       4       flags, bit 0: the z coordinate is enabled
+    12      4       number of bodies n
+    16      8       step
+    24      8       dt
+    32      8       radius of the universe
+    40      8       reserved, 0
+
+    followed by the columns px, py, pz, vx, vy, vz, mass, radius (n doubles each) and the colors (n ints, 0xRRGGBB).
+
+    A checkpoint is written to a temporary file which then replaces the last checkpoint,
+    so there always is one complete checkpoint even if the program is killed while writing.
+ */
+public class Checkpoint {
+
+    public static final String FILE_NAME = "checkpoint.nbck";
+    public static final int VERSION = 1;
+    public static final int FLAG_3D = 1;
+
+    private static final int MAGIC = 'N' | 'B' << 8 | 'C' << 16 | 'K' << 24;
+    private static final int HEADER_SIZE = 48;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final BodyStore bodies;
+    private final long step;
+    private final double dt;
+    private final double radius;
+    private final boolean is3D;
+
+    private Checkpoint(BodyStore bodies, long step, double dt, double radius, boolean is3D) {
+        this.bodies = bodies;
+        this.step = step;
+        this.dt = dt;
+        this.radius = radius;
+        this.is3D = is3D;
+    }
+
+    public BodyStore getBodies() {
+        return this.bodies;
+    }
+
+    // Returns the number of steps done before the checkpoint was written
+    public long getStep() {
+        return this.step;
+    }
+
+    // Sets dt, the radius of the universe and the z coordinate option to the values of the checkpoint
+    public void restore() {
+        Simulation.dt = this.dt;
+        Simulation.RADIUS = this.radius;
+        Simulation.enableZCoordinate = this.is3D;
+    }
+
+    // Returns the checkpoint file in the directory
+    public static File file(File directory) {
+        return new File(directory, FILE_NAME);
+    }
+
+    // Returns true if there is a checkpoint in the directory
+    public static boolean exists(File directory) {
+        return file(directory).isFile();
+    }
+
+    // Reads the latest checkpoint of the directory
+    public static Checkpoint read(File directory) throws IOException {
+        File file = file(directory);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) throw new IOException(file + ": not a checkpoint");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) throw new IOException(file + ": not a checkpoint");
+            int version = header.getInt(4);
+            if (version != VERSION) throw new IOException(file + ": unsupported version " + version);
+            int flags = header.getInt(8);
+            int n = header.getInt(12);
+            if (n < 0) throw new IOException(file + ": negative number of bodies");
+            if (channel.size() < HEADER_SIZE + (long) n * (8 * Double.BYTES + Integer.BYTES)) throw new IOException(file + ": file is truncated");
+
+            BodyStore bodies = new BodyStore(n);
+            long offset = HEADER_SIZE;
+            for (double[] column : columns(bodies)) offset = BinaryGalaxy.readColumn(channel, offset, column, n);
+            int[] rgb = new int[n];
+            BinaryGalaxy.readColumn(channel, offset, rgb, n);
+            HashMap<Integer, Color> colors = new HashMap<>();
+            for (int i = 0; i < n; i++) bodies.color[i] = colors.computeIfAbsent(rgb[i] & 0xFFFFFF, Color::new);
+
+            return new Checkpoint(bodies, header.getLong(16), header.getDouble(24), header.getDouble(32), (flags & FLAG_3D) != 0);
+        }
+    }
+
+    // Writes a checkpoint of the bodies into the directory, replacing the last one.
+    // The values of Simulation are stored with it. Returns when the checkpoint is on the disk
+    public static void write(BodyStore bodies, long step, File directory) throws IOException {
+        write(bodies, step, Simulation.dt, Simulation.RADIUS, Simulation.enableZCoordinate, directory,
+                ByteBuffer.allocateDirect(BUFFER_SIZE), new int[bodies.size()]);
+    }
+
+    // Writes a checkpoint with the given buffers, which are reused by the CheckpointWriter
+    static void write(BodyStore bodies, long step, double dt, double radius, boolean is3D, File directory,
+                      ByteBuffer buffer, int[] rgb) throws IOException {
+        int n = bodies.size();
+        Path target = file(directory).toPath();
+        Path temporary = target.resolveSibling(FILE_NAME + ".tmp");
+        Files.createDirectories(directory.toPath());
+
+        buffer.clear();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(is3D ? FLAG_3D : 0).putInt(n)
+                    .putLong(step).putDouble(dt).putDouble(radius).putLong(0);
+            for (double[] column : columns(bodies)) {
+                for (int i = 0; i < n; ) {
+                    if (buffer.remaining() < Double.BYTES) flush(channel, buffer);
+                    int count = Math.min(n - i, buffer.remaining() / Double.BYTES);
+                    buffer.asDoubleBuffer().put(column, i, count);
+                    buffer.position(buffer.position() + count * Double.BYTES);
+                    i += count;
+                }
+            }
+            for (int i = 0; i < n; i++) rgb[i] = bodies.color[i].getRGB() & 0xFFFFFF;
+            for (int i = 0; i < n; ) {
+                if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+                int count = Math.min(n - i, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(rgb, i, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                i += count;
+            }
+            flush(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Writes the content of the buffer to the channel and clears it
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    // The double columns in the order of the file
+    private static double[][] columns(BodyStore bodies) {
+        return new double[][] { bodies.px, bodies.py, bodies.pz, bodies.vx, bodies.vy, bodies.vz, bodies.mass, bodies.radius };
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+    Writes a Checkpoint every 'interval' steps on a background thread, so the integration does not wait for the disk.
+
+    There are two snapshot buffers. The simulation copies the bodies into the buffer that is not being written
+    (a few array copies) and continues, the writer thread writes the snapshot to the disk.
+    If the writer is still busy with the previous checkpoint when the next one is due, the pending snapshot
+    is replaced by the newer one, so the simulation never blocks and the latest state always wins.
+ */
+public class CheckpointWriter implements StepListener, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // The state of one snapshot buffer
+    private static class Snapshot {
+        final BodyStore bodies;
+        long step;
+        double dt;
+        double radius;
+        boolean is3D;
+
+        Snapshot(int n) {
+            this.bodies = new BodyStore(n);
+        }
+    }
+
+    private final File directory;
+    private final int interval;
+    private final Snapshot[] snapshots;
+    private final Thread thread;
+
+    private Snapshot pending;           // Snapshot waiting to be written, null if there is none
+    private Snapshot writing;           // Snapshot being written, null if the writer is idle
+    private boolean closed = false;
+    private long written = 0;           // Number of checkpoints written
+    private long replaced = 0;          // Number of snapshots replaced before they were written
+    private IOException error;          // The last error of the writer thread
+
+    // Constructor, writes a checkpoint of n bodies every interval steps into the directory
+    public CheckpointWriter(File directory, int interval, int n) {
+        if (interval <= 0) throw new IllegalArgumentException("The checkpoint interval must be positive");
+        this.directory = directory;
+        this.interval = interval;
+        this.snapshots = new Snapshot[] { new Snapshot(n), new Snapshot(n) };
+        this.thread = new Thread(this::run, "checkpoint");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Takes a snapshot if a checkpoint is due
+    @Override
+    public void afterStep(BodyStore bodies, long step) {
+        if (step % this.interval == 0) submit(bodies, step);
+    }
+
+    // Takes a snapshot of the bodies now and writes it in the background
+    public void submit(BodyStore bodies, long step) {
+        Snapshot snapshot;
+        synchronized (this) {
+            if (this.closed) throw new IllegalStateException("The checkpoint writer is closed");
+            // The free buffer is the one not being written, a pending snapshot is overwritten
+            snapshot = this.snapshots[0] == this.writing ? this.snapshots[1] : this.snapshots[0];
+            if (snapshot == this.pending) {
+                this.pending = null;
+                this.replaced++;
+            }
+        }
+        bodies.copyStateTo(snapshot.bodies);
+        snapshot.step = step;
+        snapshot.dt = Simulation.dt;
+        snapshot.radius = Simulation.RADIUS;
+        snapshot.is3D = Simulation.enableZCoordinate;
+        synchronized (this) {
+            this.pending = snapshot;
+            notifyAll();
+        }
+    }
+
+    // Writes the pending snapshots
+    private void run() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        int[] rgb = new int[this.snapshots[0].bodies.size()];
+        while (true) {
+            Snapshot snapshot;
+            synchronized (this) {
+                while (this.pending == null && !this.closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (this.pending == null) return;
+                snapshot = this.pending;
+                this.pending = null;
+                this.writing = snapshot;
+            }
+
+            IOException error = null;
+            try {
+                Checkpoint.write(snapshot.bodies, snapshot.step, snapshot.dt, snapshot.radius, snapshot.is3D,
+                        this.directory, buffer, rgb);
+            } catch (IOException e) {
+                error = e;
+                System.err.println("Could not write the checkpoint of step " + snapshot.step + ": " + e.getMessage());
+            }
+
+            synchronized (this) {
+                this.writing = null;
+                if (error != null) this.error = error;
+                else this.written++;
+                notifyAll();
+            }
+        }
+    }
+
+    // Returns the number of checkpoints written
+    public synchronized long getWritten() {
+        return this.written;
+    }
+
+    // Returns the number of snapshots that were replaced by a newer one before they were written
+    public synchronized long getReplaced() {
+        return this.replaced;
+    }
+
+    // Returns the last error of the writer, null if all checkpoints were written
+    public synchronized IOException getError() {
+        return this.error;
+    }
+
+    // Writes the pending snapshot and stops the writer thread
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed) return;
+            this.closed = true;
+            notifyAll();
+        }
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+// Semi-implicit Euler integration, the velocity is kicked by the current acceleration and then moves the body
+public class EulerIntegrator implements Integrator {
+
+    private BodyStore bodies;           // The store whose accelerations belong to its current positions
+
+    @Override
+    public void step(BodyStore bodies, GravitySolver solver, double dt) {
+        // The accelerations of a new store have never been calculated, see LeapfrogIntegrator
+        if (this.bodies != bodies) {
+            solver.computeForces(bodies);
+            this.bodies = bodies;
+        }
+
+        // The forces of all bodies were calculated before any body is moved, the new ones are used by the next step
+        bodies.kickDrift(dt, dt);
+        solver.computeForces(bodies);
+    }
+}
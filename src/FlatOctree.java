@@ -0,0 +1,358 @@
+import java.util.Arrays;
+
+/*
+    Array backed alternative to the Octree, see FlatTree.
+    The children of a node are stored in one contiguous block of 8 nodes.
+    The octant order is the same as in the Octree:
+
+    - -> less than center, + -> greater than center
+    child:	0 1 2 3 4 5 6 7
+    x:      - - - - + + + +
+    y:      - - + + - - + +
+    z:      - + - + - + - +
+ */
+public class FlatOctree extends FlatTree {
+
+    // Maximum depth of the tree, 3 * 21 bits of a Morton code
+    private static final int MAX_DEPTH = 21;
+
+    // The z coordinates of the nodes, see FlatTree for the others
+    // They are allocated by the constructor of FlatTree, so they must not have an initializer
+    protected double[] centerZ;
+    protected double[] massZ;
+
+    // Quadrupole moments of the nodes, only allocated if they are used
+    protected double[] qxx, qxy, qxz, qyy, qyz, qzz;
+
+    // Constructor
+    public FlatOctree() {
+        super(8, MAX_DEPTH);
+    }
+
+    // Creates the 8 children of the node
+    @Override
+    protected void split(int node) {
+        double h = this.halfWidth[node] / 2;
+        double x = this.centerX[node];
+        double y = this.centerY[node];
+        double z = this.centerZ[node];
+        int d = this.depth[node] + 1;
+        int first = newNode(x - h, y - h, z - h, h, d);
+        newNode(x - h, y - h, z + h, h, d);
+        newNode(x - h, y + h, z - h, h, d);
+        newNode(x - h, y + h, z + h, h, d);
+        newNode(x + h, y - h, z - h, h, d);
+        newNode(x + h, y - h, z + h, h, d);
+        newNode(x + h, y + h, z - h, h, d);
+        newNode(x + h, y + h, z + h, h, d);
+        this.firstChild[node] = first;
+    }
+
+    // Takes the next free node from the pool and initializes it as an empty leaf
+    private int newNode(double x, double y, double z, double half, int d) {
+        int node = newNode(x, y, half, d);
+        this.centerZ[node] = z;
+        return node;
+    }
+
+    @Override
+    protected int newNode(double x, double y, double half, int d) {
+        int node = super.newNode(x, y, half, d);
+        this.centerZ[node] = 0;
+        this.massZ[node] = 0;
+        return node;
+    }
+
+    // Returns the octant index of body i inside the node, see the Octree docs for the order
+    @Override
+    protected int childIndex(int node, int i) {
+        BodyStore b = this.bodies;
+        int oct = 0;
+        if (b.px[i] >= this.centerX[node]) oct |= 4;
+        if (b.py[i] >= this.centerY[node]) oct |= 2;
+        if (Simulation.enableZCoordinate && b.pz[i] >= this.centerZ[node]) oct |= 1;
+        return oct;
+    }
+
+    // Returns true if body i is inside the bounding box of the node
+    @Override
+    protected boolean contains(int node, int i) {
+        BodyStore b = this.bodies;
+        double h = this.halfWidth[node];
+        if (Math.abs(b.px[i] - this.centerX[node]) > h) return false;
+        if (Math.abs(b.py[i] - this.centerY[node]) > h) return false;
+        return !Simulation.enableZCoordinate || Math.abs(b.pz[i] - this.centerZ[node]) <= h;
+    }
+
+    @Override
+    protected void addBody(int node, int i) {
+        BodyStore b = this.bodies;
+        double m = b.mass[i];
+        this.mass[node] += m;
+        this.massX[node] += m * b.px[i];
+        this.massY[node] += m * b.py[i];
+        this.massZ[node] += m * b.pz[i];
+    }
+
+    @Override
+    protected void clearMass(int node) {
+        super.clearMass(node);
+        this.massZ[node] = 0;
+    }
+
+    @Override
+    protected void addNode(int node, int child) {
+        super.addNode(node, child);
+        this.massZ[node] += this.massZ[child];
+    }
+
+    @Override
+    protected void divideCenterMass(int node) {
+        super.divideCenterMass(node);
+        this.massZ[node] /= this.mass[node];
+    }
+
+    // Interleaves the 21 bit cell indices in the order x, y, z
+    @Override
+    protected long mortonKey(int i, double scale) {
+        BodyStore b = this.bodies;
+        double lower = -this.halfWidth[0];
+        long x = cell((b.px[i] - this.centerX[0] - lower) * scale);
+        long y = cell((b.py[i] - this.centerY[0] - lower) * scale);
+        long z = Simulation.enableZCoordinate ? cell((b.pz[i] - this.centerZ[0] - lower) * scale) : 0;
+        return (spread(x) << 2) | (spread(y) << 1) | spread(z);
+    }
+
+    // Spreads the 21 bits of the value, so that there are two zero bits between each of them
+    private static long spread(long value) {
+        long x = value & 0x1FFFFFL;
+        x = (x | x << 32) & 0x1F00000000FFFFL;
+        x = (x | x << 16) & 0x1F0000FF0000FFL;
+        x = (x | x << 8)  & 0x100F00F00F00F00FL;
+        x = (x | x << 4)  & 0x10C30C30C30C30C3L;
+        x = (x | x << 2)  & 0x1249249249249249L;
+        return x;
+    }
+
+    // Walks the tree iteratively with the given stack
+    @Override
+    protected void updateForce(int i, int[] stack, Metrics.Walk walk) {
+        BodyStore b = this.bodies;
+        double x = b.px[i];
+        double y = b.py[i];
+        double z = b.pz[i];
+        double fx = 0, fy = 0, fz = 0;
+        int children = Simulation.enableZCoordinate ? 1 : 2;   // step between the used octants
+
+        int direct = 0, approximated = 0;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (this.mass[node] == 0) continue;
+
+            if (this.firstChild[node] == -1) {
+                for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) {
+                    if (j == i) continue;
+                    direct++;
+                    double dx = b.px[j] - x;
+                    double dy = b.py[j] - y;
+                    double dz = b.pz[j] - z;
+                    double inv = 1 / Math.sqrt(dx * dx + dy * dy + dz * dz);
+                    double f = b.mass[j] * inv * inv * inv;
+                    fx += f * dx;
+                    fy += f * dy;
+                    fz += f * dz;
+                }
+                continue;
+            }
+
+            double dx = this.massX[node] - x;
+            double dy = this.massY[node] - y;
+            double dz = this.massZ[node] - z;
+            double r2 = dx * dx + dy * dy + dz * dz;
+            double h = this.halfWidth[node];
+            if (r2 > this.opening * h * h) {
+                approximated++;
+                double inv = 1 / Math.sqrt(r2);
+                double inv3 = inv * inv * inv;
+                double f = this.mass[node] * inv3;
+                fx += f * dx;
+                fy += f * dy;
+                fz += f * dz;
+                if (this.quadrupole) {
+                    // d = -r, so Q r = -Q d and r^T Q r = d^T Q d
+                    double qx = this.qxx[node] * dx + this.qxy[node] * dy + this.qxz[node] * dz;
+                    double qy = this.qxy[node] * dx + this.qyy[node] * dy + this.qyz[node] * dz;
+                    double qz = this.qxz[node] * dx + this.qyz[node] * dy + this.qzz[node] * dz;
+                    double inv5 = inv3 * inv * inv;
+                    double g = 2.5 * (dx * qx + dy * qy + dz * qz) * inv5 * inv * inv;
+                    fx += g * dx - qx * inv5;
+                    fy += g * dy - qy * inv5;
+                    fz += g * dz - qz * inv5;
+                }
+            } else {
+                int first = this.firstChild[node];
+                for (int c = 0; c < 8; c += children) stack[top++] = first + c;
+            }
+        }
+
+        if (Metrics.ENABLED && walk != null) walk.add(direct, approximated);
+        b.addAcceleration(i, Simulation.G * fx, Simulation.G * fy, Simulation.G * fz);
+    }
+
+    // Walks the tree once for the bounding box of the members
+    @Override
+    protected void updateGroup(InteractionList list, int[] stack, Metrics.Walk walk) {
+        BodyStore b = this.bodies;
+        double lowX = Double.POSITIVE_INFINITY, lowY = lowX, lowZ = lowX;
+        double highX = Double.NEGATIVE_INFINITY, highY = highX, highZ = highX;
+        for (int k = 0; k < list.memberCount; k++) {
+            int i = list.members[k];
+            lowX = Math.min(lowX, b.px[i]);
+            lowY = Math.min(lowY, b.py[i]);
+            lowZ = Math.min(lowZ, b.pz[i]);
+            highX = Math.max(highX, b.px[i]);
+            highY = Math.max(highY, b.py[i]);
+            highZ = Math.max(highZ, b.pz[i]);
+        }
+        int children = Simulation.enableZCoordinate ? 1 : 2;   // step between the used octants
+
+        int direct = 0, approximated = 0;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (this.mass[node] == 0) continue;
+
+            if (this.firstChild[node] == -1) {
+                for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) {
+                    direct++;
+                    list.add(b.px[j], b.py[j], b.pz[j], b.mass[j]);
+                }
+                continue;
+            }
+
+            // Distance from the center of mass to the nearest point of the box
+            double mx = this.massX[node];
+            double my = this.massY[node];
+            double mz = this.massZ[node];
+            double dx = Math.max(0, Math.max(lowX - mx, mx - highX));
+            double dy = Math.max(0, Math.max(lowY - my, my - highY));
+            double dz = Math.max(0, Math.max(lowZ - mz, mz - highZ));
+            double h = this.halfWidth[node];
+            if (dx * dx + dy * dy + dz * dz > this.opening * h * h) {
+                approximated++;
+                if (this.quadrupole) {
+                    list.addQuadrupole(mx, my, mz, this.mass[node], this.qxx[node], this.qxy[node], this.qxz[node],
+                            this.qyy[node], this.qyz[node], this.qzz[node]);
+                } else {
+                    list.add(mx, my, mz, this.mass[node]);
+                }
+            } else {
+                int first = this.firstChild[node];
+                for (int c = 0; c < 8; c += children) stack[top++] = first + c;
+            }
+        }
+
+        // Every member is one of the direct sources itself
+        for (int k = 0; k < list.memberCount; k++) {
+            int i = list.members[k];
+            list.evaluate(b.px[i], b.py[i], b.pz[i]);
+            if (Metrics.ENABLED && walk != null) walk.add(direct - 1, approximated);
+            b.resetForce(i);
+            b.addAcceleration(i, Simulation.G * list.ax, Simulation.G * list.ay, Simulation.G * list.az);
+        }
+    }
+
+    @Override
+    protected void computeQuadrupoles() {
+        if (this.qxx == null || this.qxx.length < this.nodeCount) {
+            int capacity = this.firstChild.length;
+            this.qxx = new double[capacity];
+            this.qxy = new double[capacity];
+            this.qxz = new double[capacity];
+            this.qyy = new double[capacity];
+            this.qyz = new double[capacity];
+            this.qzz = new double[capacity];
+        }
+        BodyStore b = this.bodies;
+        for (int node = this.nodeCount - 1; node >= 0; node--) {
+            this.qxx[node] = 0;
+            this.qxy[node] = 0;
+            this.qxz[node] = 0;
+            this.qyy[node] = 0;
+            this.qyz[node] = 0;
+            this.qzz[node] = 0;
+            if (this.mass[node] == 0) continue;
+
+            double cx = this.massX[node];
+            double cy = this.massY[node];
+            double cz = this.massZ[node];
+            if (this.firstChild[node] == -1) {
+                for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) {
+                    addQuadrupole(node, b.mass[j], b.px[j] - cx, b.py[j] - cy, b.pz[j] - cz);
+                }
+            } else {
+                int first = this.firstChild[node];
+                for (int c = first; c < first + 8; c++) {
+                    if (this.mass[c] == 0) continue;
+                    this.qxx[node] += this.qxx[c];
+                    this.qxy[node] += this.qxy[c];
+                    this.qxz[node] += this.qxz[c];
+                    this.qyy[node] += this.qyy[c];
+                    this.qyz[node] += this.qyz[c];
+                    this.qzz[node] += this.qzz[c];
+                    addQuadrupole(node, this.mass[c], this.massX[c] - cx, this.massY[c] - cy, this.massZ[c] - cz);
+                }
+            }
+        }
+    }
+
+    // Adds the quadrupole moment of a point mass m at distance (dx, dy, dz) from the center of mass of the node
+    private void addQuadrupole(int node, double m, double dx, double dy, double dz) {
+        double r2 = dx * dx + dy * dy + dz * dz;
+        this.qxx[node] += m * (3 * dx * dx - r2);
+        this.qxy[node] += m * 3 * dx * dy;
+        this.qxz[node] += m * 3 * dx * dz;
+        this.qyy[node] += m * (3 * dy * dy - r2);
+        this.qyz[node] += m * 3 * dy * dz;
+        this.qzz[node] += m * (3 * dz * dz - r2);
+    }
+
+    @Override
+    protected FlatTree newSubtree() {
+        return new FlatOctree();
+    }
+
+    // This function draws all (complete) quads in 2D, ignoring the Z-Coordinates
+    @Override
+    public void drawCompleteQuads() {
+        for (int node = 0; node < this.nodeCount; node++) {
+            // Children blocks start at index 1, so even octants have an odd index
+            if (Simulation.enableZCoordinate || node == 0 || (node - 1) % 2 == 0) drawQuad(node);
+        }
+    }
+
+    @Override
+    protected void copyNode(FlatTree other, int from, int to, int offset) {
+        super.copyNode(other, from, to, offset);
+        FlatOctree octree = (FlatOctree) other;
+        this.centerZ[to] = octree.centerZ[from];
+        this.massZ[to] = octree.massZ[from];
+    }
+
+    @Override
+    protected void allocateNodes(int capacity) {
+        super.allocateNodes(capacity);
+        if (this.centerZ == null) {
+            this.centerZ = new double[capacity];
+            this.massZ = new double[capacity];
+            return;
+        }
+        this.centerZ = Arrays.copyOf(this.centerZ, capacity);
+        this.massZ = Arrays.copyOf(this.massZ, capacity);
+    }
+}
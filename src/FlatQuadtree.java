@@ -0,0 +1,257 @@
+/*
+    Array backed quadtree for planar simulations, see FlatTree.
+    All bodies lie in the plane z = 0, so every node only has 4 children and the
+    force calculation does not need any z arithmetic.
+    The quadrant order follows the octant order of the Octree without the z coordinate:
+
+    - -> less than center, + -> greater than center
+    child:	0 1 2 3
+    x:      - - + +
+    y:      - + - +
+ */
+public class FlatQuadtree extends FlatTree {
+
+    // Maximum depth of the tree, 2 * 31 bits of a Morton code
+    private static final int MAX_DEPTH = 31;
+
+    // Quadrupole moments of the nodes, only allocated if they are used
+    private double[] qxx, qxy, qyy;
+
+    // Constructor
+    public FlatQuadtree() {
+        super(4, MAX_DEPTH);
+    }
+
+    // Creates the 4 children of the node
+    @Override
+    protected void split(int node) {
+        double h = this.halfWidth[node] / 2;
+        double x = this.centerX[node];
+        double y = this.centerY[node];
+        int d = this.depth[node] + 1;
+        int first = newNode(x - h, y - h, h, d);
+        newNode(x - h, y + h, h, d);
+        newNode(x + h, y - h, h, d);
+        newNode(x + h, y + h, h, d);
+        this.firstChild[node] = first;
+    }
+
+    // Returns the quadrant index of body i inside the node
+    @Override
+    protected int childIndex(int node, int i) {
+        BodyStore b = this.bodies;
+        int quad = 0;
+        if (b.px[i] >= this.centerX[node]) quad |= 2;
+        if (b.py[i] >= this.centerY[node]) quad |= 1;
+        return quad;
+    }
+
+    // Returns true if body i is inside the bounding box of the node
+    @Override
+    protected boolean contains(int node, int i) {
+        BodyStore b = this.bodies;
+        double h = this.halfWidth[node];
+        return Math.abs(b.px[i] - this.centerX[node]) <= h && Math.abs(b.py[i] - this.centerY[node]) <= h;
+    }
+
+    @Override
+    protected void addBody(int node, int i) {
+        BodyStore b = this.bodies;
+        double m = b.mass[i];
+        this.mass[node] += m;
+        this.massX[node] += m * b.px[i];
+        this.massY[node] += m * b.py[i];
+    }
+
+    // Interleaves the 31 bit cell indices in the order x, y
+    @Override
+    protected long mortonKey(int i, double scale) {
+        BodyStore b = this.bodies;
+        double lower = -this.halfWidth[0];
+        long x = cell((b.px[i] - this.centerX[0] - lower) * scale);
+        long y = cell((b.py[i] - this.centerY[0] - lower) * scale);
+        return (spread(x) << 1) | spread(y);
+    }
+
+    // Spreads the 31 bits of the value, so that there is one zero bit between each of them
+    private static long spread(long value) {
+        long x = value & 0x7FFFFFFFL;
+        x = (x | x << 16) & 0x0000FFFF0000FFFFL;
+        x = (x | x << 8)  & 0x00FF00FF00FF00FFL;
+        x = (x | x << 4)  & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | x << 2)  & 0x3333333333333333L;
+        x = (x | x << 1)  & 0x5555555555555555L;
+        return x;
+    }
+
+    // Walks the tree iteratively with the given stack
+    @Override
+    protected void updateForce(int i, int[] stack, Metrics.Walk walk) {
+        BodyStore b = this.bodies;
+        double x = b.px[i];
+        double y = b.py[i];
+        double fx = 0, fy = 0;
+
+        int direct = 0, approximated = 0;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (this.mass[node] == 0) continue;
+
+            if (this.firstChild[node] == -1) {
+                for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) {
+                    if (j == i) continue;
+                    direct++;
+                    double dx = b.px[j] - x;
+                    double dy = b.py[j] - y;
+                    double inv = 1 / Math.sqrt(dx * dx + dy * dy);
+                    double f = b.mass[j] * inv * inv * inv;
+                    fx += f * dx;
+                    fy += f * dy;
+                }
+                continue;
+            }
+
+            double dx = this.massX[node] - x;
+            double dy = this.massY[node] - y;
+            double r2 = dx * dx + dy * dy;
+            double h = this.halfWidth[node];
+            if (r2 > this.opening * h * h) {
+                approximated++;
+                double inv = 1 / Math.sqrt(r2);
+                double inv3 = inv * inv * inv;
+                double f = this.mass[node] * inv3;
+                fx += f * dx;
+                fy += f * dy;
+                if (this.quadrupole) {
+                    // d = -r, so Q r = -Q d and r^T Q r = d^T Q d
+                    double qx = this.qxx[node] * dx + this.qxy[node] * dy;
+                    double qy = this.qxy[node] * dx + this.qyy[node] * dy;
+                    double inv5 = inv3 * inv * inv;
+                    double g = 2.5 * (dx * qx + dy * qy) * inv5 * inv * inv;
+                    fx += g * dx - qx * inv5;
+                    fy += g * dy - qy * inv5;
+                }
+            } else {
+                int first = this.firstChild[node];
+                stack[top++] = first;
+                stack[top++] = first + 1;
+                stack[top++] = first + 2;
+                stack[top++] = first + 3;
+            }
+        }
+
+        if (Metrics.ENABLED && walk != null) walk.add(direct, approximated);
+        b.addAcceleration(i, Simulation.G * fx, Simulation.G * fy, 0);
+    }
+
+    // Walks the tree once for the bounding box of the members
+    @Override
+    protected void updateGroup(InteractionList list, int[] stack, Metrics.Walk walk) {
+        BodyStore b = this.bodies;
+        double lowX = Double.POSITIVE_INFINITY, lowY = lowX;
+        double highX = Double.NEGATIVE_INFINITY, highY = highX;
+        for (int k = 0; k < list.memberCount; k++) {
+            int i = list.members[k];
+            lowX = Math.min(lowX, b.px[i]);
+            lowY = Math.min(lowY, b.py[i]);
+            highX = Math.max(highX, b.px[i]);
+            highY = Math.max(highY, b.py[i]);
+        }
+
+        int direct = 0, approximated = 0;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (this.mass[node] == 0) continue;
+
+            if (this.firstChild[node] == -1) {
+                for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) {
+                    direct++;
+                    list.add(b.px[j], b.py[j], 0, b.mass[j]);
+                }
+                continue;
+            }
+
+            // Distance from the center of mass to the nearest point of the box
+            double mx = this.massX[node];
+            double my = this.massY[node];
+            double dx = Math.max(0, Math.max(lowX - mx, mx - highX));
+            double dy = Math.max(0, Math.max(lowY - my, my - highY));
+            double h = this.halfWidth[node];
+            if (dx * dx + dy * dy > this.opening * h * h) {
+                approximated++;
+                if (this.quadrupole) {
+                    list.addQuadrupole(mx, my, 0, this.mass[node], this.qxx[node], this.qxy[node], 0, this.qyy[node], 0, 0);
+                } else {
+                    list.add(mx, my, 0, this.mass[node]);
+                }
+            } else {
+                int first = this.firstChild[node];
+                stack[top++] = first;
+                stack[top++] = first + 1;
+                stack[top++] = first + 2;
+                stack[top++] = first + 3;
+            }
+        }
+
+        // Every member is one of the direct sources itself
+        for (int k = 0; k < list.memberCount; k++) {
+            int i = list.members[k];
+            list.evaluate(b.px[i], b.py[i], 0);
+            if (Metrics.ENABLED && walk != null) walk.add(direct - 1, approximated);
+            b.resetForce(i);
+            b.addAcceleration(i, Simulation.G * list.ax, Simulation.G * list.ay, 0);
+        }
+    }
+
+    @Override
+    protected void computeQuadrupoles() {
+        if (this.qxx == null || this.qxx.length < this.nodeCount) {
+            this.qxx = new double[this.firstChild.length];
+            this.qxy = new double[this.firstChild.length];
+            this.qyy = new double[this.firstChild.length];
+        }
+        BodyStore b = this.bodies;
+        for (int node = this.nodeCount - 1; node >= 0; node--) {
+            this.qxx[node] = 0;
+            this.qxy[node] = 0;
+            this.qyy[node] = 0;
+            if (this.mass[node] == 0) continue;
+
+            double cx = this.massX[node];
+            double cy = this.massY[node];
+            if (this.firstChild[node] == -1) {
+                for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) {
+                    addQuadrupole(node, b.mass[j], b.px[j] - cx, b.py[j] - cy);
+                }
+            } else {
+                int first = this.firstChild[node];
+                for (int c = first; c < first + 4; c++) {
+                    if (this.mass[c] == 0) continue;
+                    this.qxx[node] += this.qxx[c];
+                    this.qxy[node] += this.qxy[c];
+                    this.qyy[node] += this.qyy[c];
+                    addQuadrupole(node, this.mass[c], this.massX[c] - cx, this.massY[c] - cy);
+                }
+            }
+        }
+    }
+
+    // Adds the quadrupole moment of a point mass m at distance (dx, dy) from the center of mass of the node
+    private void addQuadrupole(int node, double m, double dx, double dy) {
+        double r2 = dx * dx + dy * dy;
+        this.qxx[node] += m * (3 * dx * dx - r2);
+        this.qxy[node] += m * 3 * dx * dy;
+        this.qyy[node] += m * (3 * dy * dy - r2);
+    }
+
+    @Override
+    protected FlatTree newSubtree() {
+        return new FlatQuadtree();
+    }
+}
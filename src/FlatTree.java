@@ -0,0 +1,733 @@
+import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+    Base class of the array backed trees FlatOctree (3D) and FlatQuadtree (2D).
+    Instead of allocating an object, a bounding box and a children array for every split,
+    all nodes live in preallocated primitive arrays which are reused for every step.
+    Building the tree therefore produces (close to) zero garbage once the arrays have grown
+    to the size needed by the simulation.
+
+    The children of a node are stored in one contiguous block, so a node only needs the index
+    of its first child. This class implements the build modes (see BuildMode) and the parts that do not
+    depend on the number of dimensions, the subclasses implement the geometry and the force calculation.
+ */
+public abstract class FlatTree implements GravitySolver {
+
+    // Initial number of nodes, the arrays grow on demand
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Below this number of bodies the parallel build is not worth the overhead
+    private static final int PARALLEL_BUILD_THRESHOLD = 4096;
+
+    // Maximum number of bodies of a group sharing one interaction list, see Simulation.groupedWalk
+    private static final int GROUP_SIZE = 64;
+
+    protected final int childCount;     // Number of children of a node
+    protected final int maxDepth;       // Maximum depth of the tree. Bodies that are still not separated at this
+                                        // depth share one leaf (e.g. bodies at the exact same position)
+    protected final int stackSize;      // Size of the stack needed for the tree walk
+    private final int levelBits;        // Number of bits of a Morton code used per level
+
+    // Set from Simulation.theta and Simulation.useQuadrupole by every build
+    protected double opening;           // A node is approximated if distance^2 > opening * halfWidth^2, i.e. (2 * theta)^2
+    protected boolean quadrupole;       // True if the quadrupole moments of the nodes are used
+
+    // Node pool
+    protected int nodeCount;            // Number of nodes in use
+    protected int[] firstChild;         // Index of the first child, -1 if the node is a leaf
+    protected int[] firstBody;          // Index of the first body in a leaf, -1 if the leaf is empty
+    protected int[] depth;              // Depth of the node in the tree
+    protected double[] centerX;         // Center of the node's bounding box
+    protected double[] centerY;
+    protected double[] halfWidth;       // Half of the length of one side of the bounding box
+    protected double[] mass;            // Total mass of all bodies in the node
+    protected double[] massX;           // Center of mass of all bodies in the node
+    protected double[] massY;           // (holds the mass weighted sums of the positions while building)
+
+    // Bodies of the last build
+    protected BodyStore bodies;
+    protected int[] nextBody = new int[0];  // Next body in the same leaf, -1 if it is the last one
+
+    // Stack used for the tree walk in updateForce
+    private final int[] stack;
+
+    // Used by the Morton build, reused for every step
+    private long[] keys = new long[0];      // Morton codes of the sorted bodies
+    private long[] keyBuffer = new long[0];
+    private int[] order = new int[0];       // Bodies in Z-order, followed by the bodies outside of the tree
+    private int[] orderBuffer = new int[0];
+    private int orderCount;                 // Number of bodies in the tree, -1 if the last full build was not a Morton build
+    private final int[] radixCounts = new int[256];
+
+    // Used by the parallel build, reused for every step
+    private FlatTree[] subtrees;            // Subtree of each top level child
+    private int[][] subtreeBodies;          // Bodies of each top level child
+    private int[] subtreeCounts;            // Number of bodies of each top level child
+
+    // Used by the grouped walk, reused for every step
+    private int[] bodyCount = new int[0];   // Number of bodies of every node
+    private int[] groups = new int[0];      // The largest nodes with at most GROUP_SIZE bodies, and the larger leaves
+    private int groupCount;
+
+    // Used by the refit, see Simulation.refitTree
+    private boolean refittable;             // True if the last build recorded the leaves of the bodies
+    private int[] leafOf = new int[0];      // Leaf of every body, -1 if it is outside of the tree
+    private int[] moved = new int[0];       // Bodies that left their leaf
+    private int inside;                     // Number of bodies in the tree
+    private double rebuildNodesPerBody;     // Nodes per body in the tree after the last full build
+    private int relocated;                  // Bodies relocated by the last build, -1 if it was a full build
+
+    // Constructor, the subclasses have to allocate their own node arrays in allocateNodes
+    protected FlatTree(int childCount, int maxDepth) {
+        this.childCount = childCount;
+        this.maxDepth = maxDepth;
+        this.stackSize = maxDepth * (childCount - 1) + childCount;    // at most childCount - 1 siblings per level
+        this.levelBits = Integer.numberOfTrailingZeros(childCount);
+        this.stack = new int[this.stackSize];
+        allocateNodes(INITIAL_CAPACITY);
+    }
+
+    // ****************** //
+    //  Geometry          //
+    // ****************** //
+
+    // Creates the children of the node
+    protected abstract void split(int node);
+
+    // Returns the index of the child of the node that contains body i
+    protected abstract int childIndex(int node, int i);
+
+    // Returns true if body i is inside the bounding box of the node
+    protected abstract boolean contains(int node, int i);
+
+    // Adds the mass and the mass weighted position of body i to the node
+    protected abstract void addBody(int node, int i);
+
+    // Returns the Morton code of body i, the root is divided into 2^maxDepth cells per dimension
+    protected abstract long mortonKey(int i, double scale);
+
+    // Updates the force applied on body i, walking the tree iteratively with the given stack
+    // With quadrupole moments, an approximated node with mass M, moment Q and distance vector r from its
+    // center of mass to the body adds G * (Q r / |r|^5 - 5/2 * (r^T Q r) r / |r|^7) to the monopole term
+    // The interactions are counted in walk if it is not null, see Metrics
+    protected abstract void updateForce(int i, int[] stack, Metrics.Walk walk);
+
+    // Updates the forces applied on the members of the list, which all lie in one node. The tree is walked once
+    // for the bounding box of the members: a node is approximated if it would be approximated for every point
+    // of the box, so every member gets at least the accuracy of its own walk by updateForce
+    protected abstract void updateGroup(InteractionList list, int[] stack, Metrics.Walk walk);
+
+    // Returns a new empty tree of the same kind, used for the subtrees of the parallel build
+    protected abstract FlatTree newSubtree();
+
+    // ****************** //
+    //  Build             //
+    // ****************** //
+
+    // Builds the tree for the given bodies. The root node is a cube centered at the origin with
+    // the given radius as half width. Bodies outside of the cube are not inserted
+    // With Simulation.refitTree the tree of the last build is refitted instead, see refit
+    public void build(BodyStore bodies, double radius) {
+        this.opening = 4 * Simulation.theta * Simulation.theta;
+        this.quadrupole = Simulation.useQuadrupole;
+        boolean refit = Simulation.refitTree && canRefit(bodies, radius) && refit();
+        if (!refit) {
+            this.relocated = -1;
+            this.orderCount = -1;
+            this.bodies = bodies;
+            if (bodies.size() > this.nextBody.length) this.nextBody = new int[bodies.size()];
+            this.nodeCount = 0;
+            int root = newNode(0, 0, radius, 0);
+            if (Simulation.buildMode == BuildMode.Morton) {
+                buildMorton();
+            } else if (Simulation.buildMode == BuildMode.Parallel && bodies.size() >= PARALLEL_BUILD_THRESHOLD
+                    && Parallel.enabled && ForkJoinPool.getCommonPoolParallelism() > 1) {
+                buildParallel();
+            } else {
+                for (int i = 0; i < bodies.size(); i++) {
+                    if (contains(root, i)) insert(i);
+                }
+            }
+        }
+
+        // The center of mass was accumulated as mass weighted sum, so it has to be divided once
+        for (int node = 0; node < this.nodeCount; node++) {
+            if (this.mass[node] != 0) divideCenterMass(node);
+        }
+        if (this.quadrupole) computeQuadrupoles();
+
+        this.refittable = Simulation.refitTree;
+        if (this.refittable && !refit) {
+            findLeaves();
+            this.rebuildNodesPerBody = (double) this.nodeCount / Math.max(1, this.inside);
+        }
+    }
+
+    // ****************** //
+    //  Refit             //
+    // ****************** //
+
+    // Returns true if the last build can be refitted: it recorded the leaves of the same bodies with the same
+    // radius, and the tree has not grown to more than Simulation.refitRebuildFactor times the nodes per body
+    // of the last full build
+    private boolean canRefit(BodyStore bodies, double radius) {
+        if (!this.refittable || bodies != this.bodies || this.nodeCount == 0) return false;
+        if (bodies.size() > this.leafOf.length || this.halfWidth[0] != radius) return false;
+        double nodesPerBody = (double) this.nodeCount / Math.max(1, this.inside);
+        return nodesPerBody <= Simulation.refitRebuildFactor * this.rebuildNodesPerBody;
+    }
+
+    /*
+    Keeps the nodes of the last build and only moves the bodies that left the bounding box of their leaf.
+    They are removed from their leaf and inserted again from the root, which may split a leaf.
+    The bounding boxes of the nodes never change, so the tree contains the same nodes as a new one would,
+    only the nodes that have lost their bodies are not removed. The mass sums are then calculated from the leaves
+    up, the children always have larger indices than their parent. The Z-order of a Morton build is kept,
+    only the moved bodies are out of place.
+    Returns false without changing the tree if more than Simulation.refitMaxMoved of the bodies have to be moved,
+    a full build is faster then
+    */
+    private boolean refit() {
+        int n = this.bodies.size();
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int leaf = this.leafOf[i];
+            if (leaf == -1 ? contains(0, i) : !contains(leaf, i)) this.moved[count++] = i;
+        }
+        if (count > Simulation.refitMaxMoved * n) return false;
+
+        for (int k = 0; k < count; k++) {
+            int i = this.moved[k];
+            if (this.leafOf[i] != -1) removeBody(this.leafOf[i], i);
+            this.leafOf[i] = -1;
+        }
+        for (int k = 0; k < count; k++) {
+            int i = this.moved[k];
+            if (contains(0, i)) insert(i);
+        }
+        this.relocated = count;
+
+        this.inside = 0;
+        for (int node = this.nodeCount - 1; node >= 0; node--) {
+            clearMass(node);
+            int first = this.firstChild[node];
+            if (first == -1) {
+                for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) {
+                    addBody(node, j);
+                    this.leafOf[j] = node;
+                    this.inside++;
+                }
+            } else {
+                for (int c = first; c < first + this.childCount; c++) addNode(node, c);
+            }
+        }
+        if (this.orderCount >= 0) partitionOrder();
+        return true;
+    }
+
+    // Moves the bodies in the tree to the front of the order of the last Morton build, without changing
+    // their order, and the bodies outside of the tree behind them
+    private void partitionOrder() {
+        int n = this.bodies.size();
+        int inside = 0;
+        int outside = n;
+        for (int k = 0; k < n; k++) {
+            int i = this.order[k];
+            if (this.leafOf[i] != -1) this.orderBuffer[inside++] = i;
+            else this.orderBuffer[--outside] = i;
+        }
+        int[] order = this.order;
+        this.order = this.orderBuffer;
+        this.orderBuffer = order;
+        this.orderCount = inside;
+    }
+
+    // Records the leaf of every body after a full build
+    private void findLeaves() {
+        int n = this.bodies.size();
+        if (n > this.leafOf.length) {
+            this.leafOf = new int[n];
+            this.moved = new int[n];
+        }
+        Arrays.fill(this.leafOf, 0, n, -1);
+        this.inside = 0;
+        for (int node = 0; node < this.nodeCount; node++) {
+            if (this.firstChild[node] != -1) continue;
+            for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) {
+                this.leafOf[j] = node;
+                this.inside++;
+            }
+        }
+    }
+
+    // Removes body i from the bodies of the leaf
+    private void removeBody(int leaf, int i) {
+        int previous = -1;
+        for (int j = this.firstBody[leaf]; j != -1; j = this.nextBody[j]) {
+            if (j == i) {
+                if (previous == -1) this.firstBody[leaf] = this.nextBody[j];
+                else this.nextBody[previous] = this.nextBody[j];
+                return;
+            }
+            previous = j;
+        }
+    }
+
+    // Returns the number of bodies moved to another leaf by the last build, -1 if it was a full build
+    public int getRelocated() {
+        return this.relocated;
+    }
+
+    // Calculates the quadrupole moments Q = sum m * (3 * d * d^T - |d|^2 * I) of all nodes about their
+    // centers of mass. The children always have larger indices than their parent, so going through the
+    // nodes backwards calculates the children first and the parents are shifted from them
+    protected abstract void computeQuadrupoles();
+
+    // Turns the mass weighted sum of the positions of the node into the center of mass
+    protected void divideCenterMass(int node) {
+        this.massX[node] /= this.mass[node];
+        this.massY[node] /= this.mass[node];
+    }
+
+    // Inserts body i into the tree, starting at the root
+    protected void insert(int i) {
+        int node = 0;
+        while (true) {
+            // Every node on the way down contains the body
+            addBody(node, i);
+
+            if (this.firstChild[node] == -1) {
+                int old = this.firstBody[node];
+                if (old == -1) {
+                    // Empty leaf
+                    this.firstBody[node] = i;
+                    this.nextBody[i] = -1;
+                    return;
+                }
+                if (this.depth[node] >= this.maxDepth) {
+                    // Too deep to split any further, so the bodies share the leaf
+                    this.nextBody[i] = old;
+                    this.firstBody[node] = i;
+                    return;
+                }
+
+                // We're at a leaf, but there's already something here
+                // Split this node and move the old body into the correct child
+                split(node);
+                this.firstBody[node] = -1;
+                int child = this.firstChild[node] + childIndex(node, old);
+                this.firstBody[child] = old;
+                this.nextBody[old] = -1;
+                addBody(child, old);
+            }
+            node = this.firstChild[node] + childIndex(node, i);
+        }
+    }
+
+    // Partitions the bodies into the top level children, builds the subtree of every child on its own task
+    // and copies the subtrees behind the children of the root. The mass sums of the root are merged from its children
+    private void buildParallel() {
+        if (this.subtrees == null) {
+            this.subtrees = new FlatTree[this.childCount];
+            this.subtreeBodies = new int[this.childCount][0];
+            this.subtreeCounts = new int[this.childCount];
+        }
+
+        // Partition the bodies
+        Arrays.fill(this.subtreeCounts, 0);
+        for (int i = 0; i < this.bodies.size(); i++) {
+            if (!contains(0, i)) continue;
+            int k = childIndex(0, i);
+            if (this.subtreeCounts[k] == this.subtreeBodies[k].length) {
+                this.subtreeBodies[k] = Arrays.copyOf(this.subtreeBodies[k], Math.max(1024, this.subtreeCounts[k] * 2));
+            }
+            this.subtreeBodies[k][this.subtreeCounts[k]++] = i;
+        }
+
+        // Build the subtrees, every subtree only writes its own nodes and the next pointers of its own bodies
+        split(0);
+        int first = this.firstChild[0];
+        Parallel.forRange(0, this.childCount, 1, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                if (this.subtreeCounts[k] == 0) continue;
+                if (this.subtrees[k] == null) this.subtrees[k] = newSubtree();
+                FlatTree subtree = this.subtrees[k];
+                subtree.bodies = this.bodies;
+                subtree.nextBody = this.nextBody;
+                subtree.nodeCount = 0;
+                subtree.newNode(0, 0, 0, 0);
+                subtree.copyNode(this, first + k, 0, 0);
+                for (int j = 0; j < this.subtreeCounts[k]; j++) subtree.insert(this.subtreeBodies[k][j]);
+            }
+        });
+
+        // Merge the subtrees
+        for (int k = 0; k < this.childCount; k++) {
+            if (this.subtreeCounts[k] == 0) continue;
+            FlatTree subtree = this.subtrees[k];
+            int child = first + k;
+            int base = this.nodeCount;
+            int count = subtree.nodeCount - 1;
+            while (base + count > this.firstChild.length) allocateNodes(this.firstChild.length * 2);
+
+            // The root of the subtree replaces the child, all other nodes are appended. Node j of
+            // the subtree becomes node base + j - 1, so the first child indices have to be moved
+            copyNode(subtree, 0, child, base - 1);
+            for (int j = 1; j <= count; j++) copyNode(subtree, j, base + j - 1, base - 1);
+            this.nodeCount += count;
+            addNode(0, child);
+        }
+    }
+
+    /*
+    Computes a Morton code for every body inside the root, sorts the bodies by their codes with a
+    radix sort and builds the tree from the sorted codes. Each level of the tree uses the bits of the code
+    in the same order as the child indices, so the bodies of every node form one consecutive range
+    */
+    private void buildMorton() {
+        int n = this.bodies.size();
+        if (n > this.keys.length) {
+            this.keys = new long[n];
+            this.keyBuffer = new long[n];
+            this.order = new int[n];
+            this.orderBuffer = new int[n];
+        }
+
+        double scale = (1L << this.maxDepth) / (2 * this.halfWidth[0]);
+        int inside = 0;
+        int outside = n;
+        for (int i = 0; i < n; i++) {
+            if (!contains(0, i)) {
+                this.order[--outside] = i;
+                continue;
+            }
+            this.keys[inside] = mortonKey(i, scale);
+            this.order[inside] = i;
+            inside++;
+        }
+
+        radixSort(inside);
+        this.orderCount = inside;
+        if (inside > 0) buildRange(0, 0, inside);
+    }
+
+    // Builds the subtree of the node from the sorted bodies [from, to), which all lie inside the node
+    private void buildRange(int node, int from, int to) {
+        if (to - from == 1 || this.depth[node] >= this.maxDepth) {
+            int next = -1;
+            for (int k = to - 1; k >= from; k--) {
+                int i = this.order[k];
+                addBody(node, i);
+                this.nextBody[i] = next;
+                next = i;
+            }
+            this.firstBody[node] = next;
+            return;
+        }
+
+        split(node);
+        int first = this.firstChild[node];
+        int shift = this.levelBits * (this.maxDepth - 1 - this.depth[node]);
+        int mask = this.childCount - 1;
+        int start = from;
+        for (int k = 0; k < this.childCount && start < to; k++) {
+            int end = start;
+            while (end < to && ((this.keys[end] >>> shift) & mask) == k) end++;
+            if (end == start) continue;
+
+            buildRange(first + k, start, end);
+            addNode(node, first + k);
+            start = end;
+        }
+    }
+
+    // Sorts the first n keys and the bodies in the same order by 8 bits per pass, least significant first
+    // Passes in which all keys have the same byte are skipped
+    private void radixSort(int n) {
+        if (n < 2) return;
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(this.radixCounts, 0);
+            for (int k = 0; k < n; k++) this.radixCounts[(int) (this.keys[k] >>> shift) & 0xFF]++;
+            if (this.radixCounts[(int) (this.keys[0] >>> shift) & 0xFF] == n) continue;
+
+            int sum = 0;
+            for (int d = 0; d < 256; d++) {
+                int count = this.radixCounts[d];
+                this.radixCounts[d] = sum;
+                sum += count;
+            }
+            for (int k = 0; k < n; k++) {
+                int target = this.radixCounts[(int) (this.keys[k] >>> shift) & 0xFF]++;
+                this.keyBuffer[target] = this.keys[k];
+                this.orderBuffer[target] = this.order[k];
+            }
+
+            long[] keys = this.keys;
+            this.keys = this.keyBuffer;
+            this.keyBuffer = keys;
+            int[] order = this.order;
+            this.order = this.orderBuffer;
+            this.orderBuffer = order;
+            // The bodies outside of the tree are kept behind the sorted ones
+            System.arraycopy(this.orderBuffer, n, this.order, n, this.bodies.size() - n);
+        }
+    }
+
+    // Returns the cell index of a scaled coordinate, clamped to the 2^maxDepth cells
+    protected long cell(double scaled) {
+        long cell = (long) scaled;
+        return Math.max(0, Math.min((1L << this.maxDepth) - 1, cell));
+    }
+
+    // ****************** //
+    //  Node pool         //
+    // ****************** //
+
+    // Takes the next free node from the pool and initializes it as an empty leaf
+    protected int newNode(double x, double y, double half, int d) {
+        if (this.nodeCount == this.firstChild.length) allocateNodes(this.nodeCount * 2);
+        int node = this.nodeCount++;
+        this.firstChild[node] = -1;
+        this.firstBody[node] = -1;
+        this.depth[node] = d;
+        this.centerX[node] = x;
+        this.centerY[node] = y;
+        this.halfWidth[node] = half;
+        this.mass[node] = 0;
+        this.massX[node] = 0;
+        this.massY[node] = 0;
+        return node;
+    }
+
+    // Sets the mass and the mass weighted position of the node to 0
+    protected void clearMass(int node) {
+        this.mass[node] = 0;
+        this.massX[node] = 0;
+        this.massY[node] = 0;
+    }
+
+    // Adds the mass and the mass weighted position of the child to the node
+    protected void addNode(int node, int child) {
+        this.mass[node] += this.mass[child];
+        this.massX[node] += this.massX[child];
+        this.massY[node] += this.massY[child];
+    }
+
+    // Copies node 'from' of the other tree to node 'to' of this tree. The first child index is moved by offset
+    protected void copyNode(FlatTree other, int from, int to, int offset) {
+        int firstChild = other.firstChild[from];
+        this.firstChild[to] = firstChild == -1 ? -1 : firstChild + offset;
+        this.firstBody[to] = other.firstBody[from];
+        this.depth[to] = other.depth[from];
+        this.centerX[to] = other.centerX[from];
+        this.centerY[to] = other.centerY[from];
+        this.halfWidth[to] = other.halfWidth[from];
+        this.mass[to] = other.mass[from];
+        this.massX[to] = other.massX[from];
+        this.massY[to] = other.massY[from];
+    }
+
+    // Grows the node arrays to the given capacity, keeping the existing nodes
+    protected void allocateNodes(int capacity) {
+        if (this.firstChild == null) {
+            this.firstChild = new int[capacity];
+            this.firstBody = new int[capacity];
+            this.depth = new int[capacity];
+            this.centerX = new double[capacity];
+            this.centerY = new double[capacity];
+            this.halfWidth = new double[capacity];
+            this.mass = new double[capacity];
+            this.massX = new double[capacity];
+            this.massY = new double[capacity];
+            return;
+        }
+        this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+        this.firstBody = Arrays.copyOf(this.firstBody, capacity);
+        this.depth = Arrays.copyOf(this.depth, capacity);
+        this.centerX = Arrays.copyOf(this.centerX, capacity);
+        this.centerY = Arrays.copyOf(this.centerY, capacity);
+        this.halfWidth = Arrays.copyOf(this.halfWidth, capacity);
+        this.mass = Arrays.copyOf(this.mass, capacity);
+        this.massX = Arrays.copyOf(this.massX, capacity);
+        this.massY = Arrays.copyOf(this.massY, capacity);
+    }
+
+    // ****************** //
+    //  Forces            //
+    // ****************** //
+
+    // Builds the tree and calculates the accelerations of all bodies in parallel
+    // Every piece of the range gets its own stack, the tree itself is only read
+    @Override
+    public void computeForces(BodyStore bodies) {
+        long start = Metrics.start();
+        build(bodies, Simulation.RADIUS);
+        Metrics.stop(Metrics.Phase.Build, start);
+        if (Metrics.ENABLED) Metrics.treeBuilt(this.nodeCount, getMaxDepth());
+
+        start = Metrics.start();
+        if (Simulation.groupedWalk) {
+            computeGroupForces(bodies);
+            Metrics.stop(Metrics.Phase.Force, start);
+            return;
+        }
+
+        // After a Morton build the bodies are walked in Z-order, so consecutive walks take nearly the same path
+        int sorted = this.orderCount;
+        int[] order = this.order;
+        Parallel.forRange(0, bodies.size(), (from, to) -> {
+            int[] stack = new int[this.stackSize];
+            Metrics.Walk walk = Metrics.walk();
+            for (int k = from; k < to; k++) {
+                int i = sorted >= 0 ? order[k] : k;
+                bodies.resetForce(i);
+                if (sorted >= 0 ? k < sorted : contains(0, i)) updateForce(i, stack, walk);
+            }
+            if (walk != null) walk.flush();
+        });
+        Metrics.stop(Metrics.Phase.Force, start);
+    }
+
+    // Walks the tree once per group of nearby bodies, see updateGroup
+    private void computeGroupForces(BodyStore bodies) {
+        findGroups();
+        Parallel.forRange(0, this.groupCount, 16, (from, to) -> {
+            int[] stack = new int[this.stackSize];
+            InteractionList list = new InteractionList();
+            Metrics.Walk walk = Metrics.walk();
+            for (int g = from; g < to; g++) {
+                list.clear();
+                addMembers(this.groups[g], list, stack);
+                updateGroup(list, stack, walk);
+            }
+            if (walk != null) walk.flush();
+        });
+
+        // The bodies outside of the tree are in no group
+        Parallel.forRange(0, bodies.size(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                if (!contains(0, i)) bodies.resetForce(i);
+            }
+        });
+    }
+
+    // Counts the bodies of every node and collects the groups in the order of the tree
+    private void findGroups() {
+        if (this.bodyCount.length < this.nodeCount) this.bodyCount = new int[this.firstChild.length];
+        for (int node = this.nodeCount - 1; node >= 0; node--) {
+            int count = 0;
+            int first = this.firstChild[node];
+            if (first == -1) {
+                for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) count++;
+            } else {
+                for (int c = first; c < first + this.childCount; c++) count += this.bodyCount[c];
+            }
+            this.bodyCount[node] = count;
+        }
+
+        this.groupCount = 0;
+        int top = 0;
+        this.stack[top++] = 0;
+        while (top > 0) {
+            int node = this.stack[--top];
+            if (this.bodyCount[node] == 0) continue;
+            int first = this.firstChild[node];
+            if (first == -1 || this.bodyCount[node] <= GROUP_SIZE) {
+                if (this.groupCount == this.groups.length) {
+                    this.groups = Arrays.copyOf(this.groups, Math.max(1024, this.groupCount * 2));
+                }
+                this.groups[this.groupCount++] = node;
+                continue;
+            }
+            // Pushed backwards, so the groups are in the order of the children
+            for (int c = first + this.childCount - 1; c >= first; c--) this.stack[top++] = c;
+        }
+    }
+
+    // Adds the bodies of the node's subtree to the members of the list
+    private void addMembers(int group, InteractionList list, int[] stack) {
+        int top = 0;
+        stack[top++] = group;
+        while (top > 0) {
+            int node = stack[--top];
+            int first = this.firstChild[node];
+            if (first == -1) {
+                for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) list.addMember(j);
+            } else {
+                for (int c = first; c < first + this.childCount; c++) stack[top++] = c;
+            }
+        }
+    }
+
+    // Builds the tree from all bodies and calculates the accelerations of the active bodies in parallel
+    @Override
+    public void computeForces(BodyStore bodies, int[] active, int count) {
+        long start = Metrics.start();
+        build(bodies, Simulation.RADIUS);
+        Metrics.stop(Metrics.Phase.Build, start);
+        if (Metrics.ENABLED) Metrics.treeBuilt(this.nodeCount, getMaxDepth());
+
+        start = Metrics.start();
+        Parallel.forRange(0, count, (from, to) -> {
+            int[] stack = new int[this.stackSize];
+            Metrics.Walk walk = Metrics.walk();
+            for (int k = from; k < to; k++) {
+                int i = active[k];
+                bodies.resetForce(i);
+                if (contains(0, i)) updateForce(i, stack, walk);
+            }
+            if (walk != null) walk.flush();
+        });
+        Metrics.stop(Metrics.Phase.Force, start);
+    }
+
+    // Updates the force applied on body i of the last build based on the Barnes Hut Algorithm
+    public void updateForce(int i) {
+        updateForce(i, this.stack, null);
+    }
+
+    // Returns the depth of the deepest node of the last build
+    public int getMaxDepth() {
+        int max = 0;
+        for (int node = 0; node < this.nodeCount; node++) max = Math.max(max, this.depth[node]);
+        return max;
+    }
+
+    // ****************** //
+    //  Drawing           //
+    // ****************** //
+
+    // This function draws leaf quads in 2D, ignoring the Z-Coordinates
+    @Override
+    public void drawLeafQuads() {
+        for (int node = 0; node < this.nodeCount; node++) {
+            if (this.firstChild[node] == -1 && this.firstBody[node] != -1) drawQuad(node);
+        }
+    }
+
+    // This function draws all (complete) quads in 2D, ignoring the Z-Coordinates
+    @Override
+    public void drawCompleteQuads() {
+        for (int node = 0; node < this.nodeCount; node++) drawQuad(node);
+    }
+
+    // This function draws the center masses if the node is not a leaf in 2D, ignoring the Z-Coordinates
+    @Override
+    public void drawCenterMasses() {
+        double radius = CelestialBody.avgBodyToUniverseRadius() * 10;
+        StdDraw.setPenColor(Color.pink);
+        for (int node = 0; node < this.nodeCount; node++) {
+            if (this.firstChild[node] != -1) {
+                StdDraw.filledCircle(this.massX[node], this.massY[node], radius / (this.depth[node] + 1));
+            }
+        }
+    }
+
+    // Draws the bounding box of the node
+    protected void drawQuad(int node) {
+        StdDraw.setPenColor(Color.green);
+        StdDraw.square(this.centerX[node], this.centerY[node], this.halfWidth[node]);
+    }
+}
@@ -0,0 +1,394 @@
+import java.util.Arrays;
+
+/*
+    Fast multipole method on the nodes of the FlatOctree.
+
+    Barnes Hut walks the tree once per body, so every body pays for its own list of approximated nodes and the
+    force calculation is O(n log n). The FMM lets whole nodes interact with each other instead: the field of a
+    source node A (mass, center of mass and quadrupole moment) is expanded as a Taylor series around the center
+    of a target node B (multipole to local, M2L). The expansion of a node is shifted down to its children
+    (local to local, L2L) and finally evaluated at the bodies (L2P). This makes the force calculation O(n).
+
+    The pairs of nodes are found by a dual tree walk starting with the root interacting with itself:
+
+    1. a node interacting with itself lets all pairs of its children interact
+    2. two nodes are well separated if distance > theta * (rA + rB), where r is the radius of the sphere around
+       the center of the node that contains all of its bodies. Then A is added to the expansion of B
+    3. two small nodes (at most LEAF_SIZE bodies) add the forces of all bodies of A to the bodies of B directly
+    4. otherwise the larger node is split and its children interact with the other node
+
+    The expansion of a node holds the first, second and third derivatives of the potential at its center, so the
+    accelerations inside the node are exact to second order in the distance from the center. The sources contribute
+    with their monopole and quadrupole moments, the third derivatives only with the monopole.
+
+    Every interaction only writes the expansion and the bodies of the target, so the walk forks a task for every
+    child whenever a large target is split, and tasks never write the same node.
+    The bodies are copied into the order of the tree, so the bodies of every node form one range of the arrays
+    and the direct sums run over consecutive memory. There is no walk per body, so the walk counters of Metrics
+    stay empty, only the durations and the size of the tree are recorded.
+ */
+public class FmmSolver extends FlatOctree {
+
+    // Nodes with at most this many bodies are not split, their bodies interact directly
+    private static final int LEAF_SIZE = 16;
+
+    // Targets with fewer bodies are not split into tasks
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    // Coefficients of an expansion: 3 first, 6 second and 10 third derivatives of the potential, in the order
+    // x, y, z | xx, xy, xz, yy, yz, zz | xxx, xxy, xxz, xyy, xyz, xzz, yyy, yyz, yzz, zzz
+    private static final int TERMS = 19;
+
+    private double separation;              // Set from Simulation.theta by every build
+
+    // Per node, reused for every step
+    private int[] begin = new int[0];       // Range [begin, end) of the bodies of the node in the sorted arrays
+    private int[] end = new int[0];
+    private double[] expansionX = new double[0];    // Center of the expansion, the center of mass if there is any mass
+    private double[] expansionY = new double[0];
+    private double[] expansionZ = new double[0];
+    private double[] radius = new double[0];        // Distance of the farthest body from the center of the expansion
+    private double[] local = new double[0];         // TERMS coefficients per node
+
+    // Per body in the order of the tree, reused for every step
+    private int sortedCount;
+    private int[] sorted = new int[0];      // Body at each position
+    private int[] position = new int[0];    // Position of each body, -1 if it is outside of the tree
+    private double[] sx = new double[0];
+    private double[] sy = new double[0];
+    private double[] sz = new double[0];
+    private double[] sm = new double[0];
+    private double[] force = new double[0]; // Accelerations x, y, z of every position without the factor G
+
+    // Builds the tree and calculates the accelerations of all bodies
+    @Override
+    public void computeForces(BodyStore bodies) {
+        prepare(bodies);
+
+        long start = Metrics.start();
+        evaluate();
+        double g = Simulation.G;
+        Parallel.forRange(0, bodies.size(), (from, to) -> {
+            for (int i = from; i < to; i++) applyForce(bodies, i, g);
+        });
+        Metrics.stop(Metrics.Phase.Force, start);
+    }
+
+    // The expansions are calculated for all bodies at once, so this costs as much as a step of all bodies.
+    // Only the accelerations of the active bodies are changed
+    @Override
+    public void computeForces(BodyStore bodies, int[] active, int count) {
+        prepare(bodies);
+
+        long start = Metrics.start();
+        evaluate();
+        double g = Simulation.G;
+        Parallel.forRange(0, count, (from, to) -> {
+            for (int k = from; k < to; k++) applyForce(bodies, active[k], g);
+        });
+        Metrics.stop(Metrics.Phase.Force, start);
+    }
+
+    // Sets the acceleration of body i from the sorted accelerations, 0 if it is outside of the tree
+    private void applyForce(BodyStore bodies, int i, double g) {
+        bodies.resetForce(i);
+        int k = this.position[i];
+        if (k >= 0) bodies.addAcceleration(i, g * this.force[3 * k], g * this.force[3 * k + 1], g * this.force[3 * k + 2]);
+    }
+
+    // Builds the tree and sorts the bodies
+    private void prepare(BodyStore bodies) {
+        long start = Metrics.start();
+        build(bodies, Simulation.RADIUS);
+        if (!this.quadrupole) computeQuadrupoles();
+        this.separation = Simulation.theta * Simulation.theta;
+        sort(bodies);
+        Metrics.stop(Metrics.Phase.Build, start);
+        if (Metrics.ENABLED) Metrics.treeBuilt(this.nodeCount, getMaxDepth());
+    }
+
+    // Calculates the sorted accelerations of all bodies in the tree
+    private void evaluate() {
+        Arrays.fill(this.local, 0, this.nodeCount * TERMS, 0);
+        Arrays.fill(this.force, 0, 3 * this.sortedCount, 0);
+        interact(0, 0);
+        if (this.sortedCount > 0) down(0);
+    }
+
+    // ****************** //
+    //  Upward pass       //
+    // ****************** //
+
+    // Copies the bodies into the order of the tree and calculates the centers and radii of the nodes
+    private void sort(BodyStore bodies) {
+        int n = bodies.size();
+        if (n > this.sorted.length) {
+            this.sorted = new int[n];
+            this.position = new int[n];
+            this.sx = new double[n];
+            this.sy = new double[n];
+            this.sz = new double[n];
+            this.sm = new double[n];
+            this.force = new double[3 * n];
+        }
+        if (this.begin.length < this.nodeCount) {
+            int capacity = this.firstChild.length;
+            this.begin = new int[capacity];
+            this.end = new int[capacity];
+            this.expansionX = new double[capacity];
+            this.expansionY = new double[capacity];
+            this.expansionZ = new double[capacity];
+            this.radius = new double[capacity];
+            this.local = new double[capacity * TERMS];
+        }
+        Arrays.fill(this.position, 0, n, -1);
+        this.sortedCount = sort(bodies, 0, 0);
+    }
+
+    // Appends the bodies of the node's subtree at the given position and returns the position after them.
+    // The children are done first, so the radius of a node can be bounded by the radii of its children
+    private int sort(BodyStore b, int node, int next) {
+        this.begin[node] = next;
+        int first = this.firstChild[node];
+        if (first == -1) {
+            for (int j = this.firstBody[node]; j != -1; j = this.nextBody[j]) {
+                this.sorted[next] = j;
+                this.position[j] = next;
+                this.sx[next] = b.px[j];
+                this.sy[next] = b.py[j];
+                this.sz[next] = b.pz[j];
+                this.sm[next] = b.mass[j];
+                next++;
+            }
+        } else {
+            for (int c = first; c < first + 8; c++) next = sort(b, c, next);
+        }
+        this.end[node] = next;
+
+        double x, y, z;
+        if (this.mass[node] != 0) {
+            x = this.massX[node];
+            y = this.massY[node];
+            z = this.massZ[node];
+        } else {
+            x = this.centerX[node];
+            y = this.centerY[node];
+            z = this.centerZ[node];
+        }
+        this.expansionX[node] = x;
+        this.expansionY[node] = y;
+        this.expansionZ[node] = z;
+
+        // Small nodes measure their bodies, larger ones enclose the spheres of their children
+        double r = 0;
+        if (first == -1 || next - this.begin[node] <= LEAF_SIZE) {
+            double r2 = 0;
+            for (int k = this.begin[node]; k < next; k++) {
+                double dx = this.sx[k] - x, dy = this.sy[k] - y, dz = this.sz[k] - z;
+                r2 = Math.max(r2, dx * dx + dy * dy + dz * dz);
+            }
+            r = Math.sqrt(r2);
+        } else {
+            for (int c = first; c < first + 8; c++) {
+                if (this.begin[c] == this.end[c]) continue;
+                double dx = this.expansionX[c] - x, dy = this.expansionY[c] - y, dz = this.expansionZ[c] - z;
+                r = Math.max(r, this.radius[c] + Math.sqrt(dx * dx + dy * dy + dz * dz));
+            }
+        }
+        this.radius[node] = r;
+        return next;
+    }
+
+    // ****************** //
+    //  Dual tree walk    //
+    // ****************** //
+
+    // Returns true if the bodies of the node interact directly instead of splitting it
+    private boolean small(int node) {
+        return this.firstChild[node] == -1 || this.end[node] - this.begin[node] <= LEAF_SIZE;
+    }
+
+    // Adds the field of the source node a to the target node b
+    private void interact(int a, int b) {
+        if (this.mass[a] == 0 || this.begin[b] == this.end[b]) return;
+
+        if (a == b) {
+            if (small(a)) {
+                direct(a, b);
+                return;
+            }
+            int first = this.firstChild[a];
+            forChildren(b, (from, to) -> {
+                for (int target = from; target < to; target++) {
+                    for (int source = first; source < first + 8; source++) interact(source, target);
+                }
+            });
+            return;
+        }
+
+        double dx = this.expansionX[b] - this.expansionX[a];
+        double dy = this.expansionY[b] - this.expansionY[a];
+        double dz = this.expansionZ[b] - this.expansionZ[a];
+        double r = this.radius[a] + this.radius[b];
+        if (dx * dx + dy * dy + dz * dz > this.separation * r * r) {
+            multipoleToLocal(a, b, dx, dy, dz);
+            return;
+        }
+
+        boolean smallSource = small(a);
+        boolean smallTarget = small(b);
+        if (smallSource && smallTarget) {
+            direct(a, b);
+        } else if (smallTarget || (!smallSource && this.halfWidth[a] >= this.halfWidth[b])) {
+            int first = this.firstChild[a];
+            for (int source = first; source < first + 8; source++) interact(source, b);
+        } else {
+            forChildren(b, (from, to) -> {
+                for (int target = from; target < to; target++) interact(a, target);
+            });
+        }
+    }
+
+    // Runs the body for the children of the node, on their own tasks if the node is large
+    private void forChildren(int node, Parallel.RangeBody body) {
+        int first = this.firstChild[node];
+        if (this.end[node] - this.begin[node] >= PARALLEL_THRESHOLD) Parallel.forRange(first, first + 8, 1, body);
+        else body.run(first, first + 8);
+    }
+
+    // Adds the forces of the bodies of node a to the bodies of node b, see ForceKernel
+    private void direct(int a, int b) {
+        ForceKernel kernel = ForceKernel.INSTANCE;
+        int from = this.begin[a], to = this.end[a];
+        for (int i = this.begin[b]; i < this.end[b]; i++) {
+            kernel.pointMasses(this.sx, this.sy, this.sz, this.sm, from, to, this.sx[i], this.sy[i], this.sz[i], this.force, 3 * i);
+        }
+    }
+
+    // Adds the derivatives of the potential of node a at the center of node b, (x, y, z) = center b - center a
+    // The potential is -M / r - 1/2 * r^T Q r / r^5, the factor G is applied to the final accelerations
+    private void multipoleToLocal(int a, int b, double x, double y, double z) {
+        double inv2 = 1 / (x * x + y * y + z * z);
+        double inv = Math.sqrt(inv2);
+        double inv3 = inv * inv2;
+        double inv5 = inv3 * inv2;
+        double inv7 = inv5 * inv2;
+        double m = this.mass[a];
+
+        // Monopole: d_i = m r_i / r^3, d_ij = m (delta_ij / r^3 - 3 r_i r_j / r^5),
+        // d_ijk = -3m (delta_ij r_k + delta_ik r_j + delta_jk r_i) / r^5 + 15m r_i r_j r_k / r^7
+        double m3 = m * inv3, m5 = 3 * m * inv5, m7 = 15 * m * inv7;
+        double dx = m3 * x, dy = m3 * y, dz = m3 * z;
+        double dxx = m3 - m5 * x * x, dxy = -m5 * x * y, dxz = -m5 * x * z;
+        double dyy = m3 - m5 * y * y, dyz = -m5 * y * z, dzz = m3 - m5 * z * z;
+
+        // Quadrupole: d_i = -(Q r)_i / r^5 + 5/2 (r^T Q r) r_i / r^7,
+        // d_ij = -Q_ij / r^5 + 5 ((Q r)_i r_j + (Q r)_j r_i + 1/2 (r^T Q r) delta_ij) / r^7 - 35/2 (r^T Q r) r_i r_j / r^9
+        double qxx = this.qxx[a], qxy = this.qxy[a], qxz = this.qxz[a];
+        double qyy = this.qyy[a], qyz = this.qyz[a], qzz = this.qzz[a];
+        double qx = qxx * x + qxy * y + qxz * z;
+        double qy = qxy * x + qyy * y + qyz * z;
+        double qz = qxz * x + qyz * y + qzz * z;
+        double rqr = x * qx + y * qy + z * qz;
+        double q7 = 5 * inv7, s = 2.5 * rqr * inv7, t = 17.5 * rqr * inv7 * inv2;
+        dx += s * x - qx * inv5;
+        dy += s * y - qy * inv5;
+        dz += s * z - qz * inv5;
+        dxx += s - qxx * inv5 + q7 * 2 * qx * x - t * x * x;
+        dxy += -qxy * inv5 + q7 * (qx * y + qy * x) - t * x * y;
+        dxz += -qxz * inv5 + q7 * (qx * z + qz * x) - t * x * z;
+        dyy += s - qyy * inv5 + q7 * 2 * qy * y - t * y * y;
+        dyz += -qyz * inv5 + q7 * (qy * z + qz * y) - t * y * z;
+        dzz += s - qzz * inv5 + q7 * 2 * qz * z - t * z * z;
+
+        double[] l = this.local;
+        int o = b * TERMS;
+        l[o] += dx;
+        l[o + 1] += dy;
+        l[o + 2] += dz;
+        l[o + 3] += dxx;
+        l[o + 4] += dxy;
+        l[o + 5] += dxz;
+        l[o + 6] += dyy;
+        l[o + 7] += dyz;
+        l[o + 8] += dzz;
+        l[o + 9] += -3 * m5 * x + m7 * x * x * x;
+        l[o + 10] += -m5 * y + m7 * x * x * y;
+        l[o + 11] += -m5 * z + m7 * x * x * z;
+        l[o + 12] += -m5 * x + m7 * x * y * y;
+        l[o + 13] += m7 * x * y * z;
+        l[o + 14] += -m5 * x + m7 * x * z * z;
+        l[o + 15] += -3 * m5 * y + m7 * y * y * y;
+        l[o + 16] += -m5 * z + m7 * y * y * z;
+        l[o + 17] += -m5 * y + m7 * y * z * z;
+        l[o + 18] += -3 * m5 * z + m7 * z * z * z;
+    }
+
+    // ****************** //
+    //  Downward pass     //
+    // ****************** //
+
+    // Shifts the expansion of the node to its children down to the small nodes, which evaluate it at their bodies
+    private void down(int node) {
+        if (small(node)) {
+            localToBodies(node);
+            return;
+        }
+        forChildren(node, (from, to) -> {
+            for (int child = from; child < to; child++) {
+                if (this.begin[child] == this.end[child]) continue;
+                localToLocal(node, child);
+                down(child);
+            }
+        });
+    }
+
+    // Adds the expansion of the node, shifted to the center of the child, to the expansion of the child:
+    // d_i += d_ij h_j + 1/2 d_ijk h_j h_k and d_ij += d_ijk h_k
+    private void localToLocal(int node, int child) {
+        double hx = this.expansionX[child] - this.expansionX[node];
+        double hy = this.expansionY[child] - this.expansionY[node];
+        double hz = this.expansionZ[child] - this.expansionZ[node];
+        double[] l = this.local;
+        int p = node * TERMS;
+        int c = child * TERMS;
+
+        // Third derivatives contracted with h
+        double mxx = l[p + 9] * hx + l[p + 10] * hy + l[p + 11] * hz;
+        double mxy = l[p + 10] * hx + l[p + 12] * hy + l[p + 13] * hz;
+        double mxz = l[p + 11] * hx + l[p + 13] * hy + l[p + 14] * hz;
+        double myy = l[p + 12] * hx + l[p + 15] * hy + l[p + 16] * hz;
+        double myz = l[p + 13] * hx + l[p + 16] * hy + l[p + 17] * hz;
+        double mzz = l[p + 14] * hx + l[p + 17] * hy + l[p + 18] * hz;
+
+        l[c] += l[p] + (l[p + 3] + mxx / 2) * hx + (l[p + 4] + mxy / 2) * hy + (l[p + 5] + mxz / 2) * hz;
+        l[c + 1] += l[p + 1] + (l[p + 4] + mxy / 2) * hx + (l[p + 6] + myy / 2) * hy + (l[p + 7] + myz / 2) * hz;
+        l[c + 2] += l[p + 2] + (l[p + 5] + mxz / 2) * hx + (l[p + 7] + myz / 2) * hy + (l[p + 8] + mzz / 2) * hz;
+        l[c + 3] += l[p + 3] + mxx;
+        l[c + 4] += l[p + 4] + mxy;
+        l[c + 5] += l[p + 5] + mxz;
+        l[c + 6] += l[p + 6] + myy;
+        l[c + 7] += l[p + 7] + myz;
+        l[c + 8] += l[p + 8] + mzz;
+        for (int k = 9; k < TERMS; k++) l[c + k] += l[p + k];
+    }
+
+    // Adds the accelerations -(d_i + d_ij h_j + 1/2 d_ijk h_j h_k) of the expansion of the node to its bodies
+    private void localToBodies(int node) {
+        double[] l = this.local;
+        int p = node * TERMS;
+        double x = this.expansionX[node], y = this.expansionY[node], z = this.expansionZ[node];
+        for (int k = this.begin[node]; k < this.end[node]; k++) {
+            double hx = this.sx[k] - x, hy = this.sy[k] - y, hz = this.sz[k] - z;
+            double mxx = l[p + 9] * hx + l[p + 10] * hy + l[p + 11] * hz;
+            double mxy = l[p + 10] * hx + l[p + 12] * hy + l[p + 13] * hz;
+            double mxz = l[p + 11] * hx + l[p + 13] * hy + l[p + 14] * hz;
+            double myy = l[p + 12] * hx + l[p + 15] * hy + l[p + 16] * hz;
+            double myz = l[p + 13] * hx + l[p + 16] * hy + l[p + 17] * hz;
+            double mzz = l[p + 14] * hx + l[p + 17] * hy + l[p + 18] * hz;
+            this.force[3 * k] -= l[p] + (l[p + 3] + mxx / 2) * hx + (l[p + 4] + mxy / 2) * hy + (l[p + 5] + mxz / 2) * hz;
+            this.force[3 * k + 1] -= l[p + 1] + (l[p + 4] + mxy / 2) * hx + (l[p + 6] + myy / 2) * hy + (l[p + 7] + myz / 2) * hz;
+            this.force[3 * k + 2] -= l[p + 2] + (l[p + 5] + mxz / 2) * hx + (l[p + 7] + myz / 2) * hy + (l[p + 8] + mzz / 2) * hz;
+        }
+    }
+}
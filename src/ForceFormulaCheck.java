@@ -0,0 +1,86 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+    Compares the in-place force calculation of BodyStore.accumulateForce with the original Vector3 formula
+    (minus, normalize, times and plus with a new vector for every step), which is kept here as reference.
+
+    For every galaxy file in the directory the accelerations of up to <bodies> bodies by all other bodies are
+    calculated with both formulas. The difference of the sums may not exceed TOLERANCE times the sum of the
+    magnitudes of the single terms, so bodies whose forces nearly cancel out are not failed by rounding.
+    Bodies without mass are skipped, the old formula only calculates forces. Exits with 1 if any file fails.
+
+    Usage: java ForceFormulaCheck [directory, default src/samples] [bodies, default 1000]
+ */
+public class ForceFormulaCheck {
+
+    public static final double TOLERANCE = 1e-12;
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "src/samples");
+        int limit = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null || files.length == 0) {
+            System.err.println("No galaxy files in " + directory);
+            System.exit(1);
+        }
+        Arrays.sort(files);
+
+        boolean failed = false;
+        for (File file : files) {
+            BodyStore bodies = GalaxyReader.read(file);
+            double error = check(bodies, limit);
+            boolean ok = error <= TOLERANCE;
+            failed |= !ok;
+            System.out.println(String.format(Locale.ROOT, "%-22s %7d bodies  relative difference %.3e  %s",
+                    file.getName(), bodies.size(), error, ok ? "ok" : "FAILED"));
+        }
+        if (failed) {
+            System.err.println("The forces differ by more than " + TOLERANCE);
+            System.exit(1);
+        }
+    }
+
+    // Returns the largest relative difference of the two formulas over every stride-th body
+    private static double check(BodyStore bodies, int limit) {
+        int n = bodies.size();
+        int stride = Math.max(1, n / Math.max(1, limit));
+        double worst = 0;
+        for (int i = 0; i < n; i += stride) {
+            double m = bodies.mass[i];
+            if (m == 0) continue;
+
+            Vector3 position = new Vector3(bodies.px[i], bodies.py[i], bodies.pz[i]);
+            Vector3 force = new Vector3();
+            double magnitudes = 0;
+            bodies.resetForce(i);
+            for (int j = 0; j < n; j++) {
+                if (j == i) continue;
+                Vector3 other = new Vector3(bodies.px[j], bodies.py[j], bodies.pz[j]);
+                if (other.distanceTo(position) == 0) continue;
+                Vector3 term = referenceForce(position, m, other, bodies.mass[j]);
+                force = term.plus(force);
+                magnitudes += term.length();
+                bodies.accumulateForce(i, bodies.px[j], bodies.py[j], bodies.pz[j], bodies.mass[j]);
+            }
+            if (magnitudes == 0) continue;
+
+            Vector3 acceleration = new Vector3(bodies.ax[i], bodies.ay[i], bodies.az[i]);
+            double difference = acceleration.times(m).distanceTo(force);
+            worst = Math.max(worst, difference / magnitudes);
+        }
+        return worst;
+    }
+
+    // The force applied on a body of mass m at the position by a body of mass mb at the position b,
+    // calculated like CelestialBody.calculateForce did before the BodyStore
+    private static Vector3 referenceForce(Vector3 position, double m, Vector3 b, double mb) {
+        Vector3 direction = b.minus(position);
+        double r = direction.length();
+        direction.normalize();
+        double F = Simulation.G * mb * m / (r * r);
+        return direction.times(F);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+    The innermost loop of the force calculation: the accelerations of many sources at one position.
+    It is used for the interaction lists of the grouped walk (see InteractionList) and the direct sums of the FmmSolver.
+
+    The sources lie in consecutive arrays, so the loop can use SIMD instructions. On Java 17 or newer the build
+    also compiles VectorKernel from src-vector, which uses the incubating Vector API (jdk.incubator.vector) to
+    calculate 4 or 8 interactions per instruction, depending on the vector size of the CPU (AVX2 or AVX-512).
+    It is used if the JVM is started with --add-modules jdk.incubator.vector, otherwise the ScalarKernel is used.
+    With -Dnbody.vector=false the ScalarKernel is always used.
+
+    The results of the kernels differ in the last bits, because the vector kernel adds in a different order.
+ */
+public interface ForceKernel {
+
+    // The kernel of this JVM, chosen once
+    ForceKernel INSTANCE = load();
+
+    // Adds the accelerations of the point masses [from, to) at the position to out[offset .. offset + 2],
+    // without the factor G. Sources at distance 0, i.e. the body itself, are skipped
+    void pointMasses(double[] x, double[] y, double[] z, double[] m, int from, int to,
+                     double px, double py, double pz, double[] out, int offset);
+
+    // Adds the accelerations of the quadrupole nodes [from, to) of the list at the position to out[offset .. offset + 2],
+    // without the factor G
+    void quadrupoles(InteractionList list, int from, int to, double px, double py, double pz, double[] out, int offset);
+
+    // Returns the VectorKernel if it is compiled, enabled and the module is available, otherwise the ScalarKernel
+    private static ForceKernel load() {
+        if (!Boolean.parseBoolean(System.getProperty("nbody.vector", "true"))) return new ScalarKernel();
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return new ScalarKernel();
+        // The benchmarks copy the sources into a package
+        String prefix = ForceKernel.class.getPackageName().isEmpty() ? "" : ForceKernel.class.getPackageName() + ".";
+        try {
+            return (ForceKernel) Class.forName(prefix + "VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarKernel();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+    Bounded ring of frame buffers between the physics thread (producer) and the renderer (consumer).
+
+    The producer copies the bodies into a free frame and publishes it. It never waits for the renderer:
+    a frame that is neither the latest published one nor the one being drawn can always be reused,
+    so frames the renderer did not pick up in time are simply overwritten (dropped).
+    The renderer always takes the latest published frame and holds it until it is released.
+    A published frame is not changed until it is reused, so the renderer sees an immutable snapshot.
+ */
+public class FrameRing {
+
+    // The minimum number of frames: one being written, one published, one being drawn
+    public static final int MIN_FRAMES = 3;
+
+    // A snapshot of the bodies at one step
+    public static class Frame {
+        private final BodyStore bodies;     // Only the drawing state (positions, radii, colors) is copied
+        private long step;                  // The step the snapshot was taken after
+
+        private Frame(int n) {
+            this.bodies = new BodyStore(n);
+        }
+
+        public BodyStore getBodies() {
+            return this.bodies;
+        }
+
+        public long getStep() {
+            return this.step;
+        }
+    }
+
+    private final Frame[] frames;
+    private int next = 0;           // Where the producer starts to look for a free frame
+    private int latest = -1;        // Index of the latest published frame, -1 if nothing was published yet
+    private int drawing = -1;       // Index of the frame held by the renderer, -1 if none
+    private long dropped = 0;       // Number of published frames that were overwritten before they were drawn
+    private boolean latestTaken;    // True if the latest published frame was taken by the renderer
+
+    // Constructor, creates frames for n bodies
+    public FrameRing(int frames, int n) {
+        if (frames < MIN_FRAMES) throw new IllegalArgumentException("A frame ring needs at least " + MIN_FRAMES + " frames");
+        this.frames = new Frame[frames];
+        for (int i = 0; i < frames; i++) this.frames[i] = new Frame(n);
+    }
+
+    // Copies the drawing state of the bodies into a free frame and publishes it as the latest frame
+    // Called by the producer only
+    public void publish(BodyStore bodies, long step) {
+        int index = acquire();
+        Frame frame = this.frames[index];
+        bodies.copyDrawingStateTo(frame.bodies);
+        frame.step = step;
+        synchronized (this) {
+            if (this.latest != -1 && !this.latestTaken) this.dropped++;
+            this.latest = index;
+            this.latestTaken = false;
+            notifyAll();
+        }
+    }
+
+    // Returns the index of a frame which is neither the latest nor the one being drawn
+    private synchronized int acquire() {
+        while (this.next == this.latest || this.next == this.drawing) {
+            this.next = (this.next + 1) % this.frames.length;
+        }
+        int index = this.next;
+        this.next = (this.next + 1) % this.frames.length;
+        return index;
+    }
+
+    // Returns the latest frame if it is newer than the given step, waits at most timeout milliseconds for it.
+    // Returns null if there is no newer frame. The frame must be released before the next one is taken
+    public synchronized Frame take(long afterStep, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (this.latest == -1 || this.frames[this.latest].step <= afterStep) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return null;
+            wait(remaining);
+        }
+        this.drawing = this.latest;
+        this.latestTaken = true;
+        return this.frames[this.drawing];
+    }
+
+    // Gives the frame taken by the renderer back to the producer
+    public synchronized void release() {
+        this.drawing = -1;
+    }
+
+    // Returns the number of frames which were never drawn
+    public synchronized long getDropped() {
+        return this.dropped;
+    }
+}
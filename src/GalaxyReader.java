@@ -0,0 +1,266 @@
+import java.awt.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/*
+    Reads galaxy files in the format of the "samples" folder directly from the bytes of the file.
+
+    Format: the number of bodies, the radius of the universe and one line per body with
+    "px py vx vy mass red green blue". Values are separated by any number of spaces or tabs,
+    lines may end with \n or \r\n and further values at the end of a line are ignored.
+
+    Numbers are parsed without creating Strings. A double with at most 15 significant digits and a small
+    exponent is exactly representable as (integer mantissa) * or / (exact power of ten), which gives the same
+    correctly rounded result as Double.parseDouble. Everything else falls back to Double.parseDouble.
+    Bodies with the same color share one Color object.
+ */
+public class GalaxyReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_TOKEN = 128;           // Longer tokens are an error
+
+    // 10^0 to 10^22 are exact doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;           // Next byte to read
+    private int limit = 0;              // End of the valid bytes in the buffer
+    private boolean end = false;        // True if the stream has no more bytes
+    private int line = 1;               // Current line, for the error messages
+
+    private final HashMap<Integer, Color> colors = new HashMap<>();
+
+    private GalaxyReader(InputStream in) {
+        this.in = in;
+    }
+
+    // Reads a galaxy file. Sets Simulation.RADIUS to the radius of the file like CelestialBody.readGalaxy
+    public static BodyStore read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Reads a galaxy from the stream, the stream is not closed
+    public static BodyStore read(InputStream in) throws IOException {
+        return new GalaxyReader(in).readBodies();
+    }
+
+    private BodyStore readBodies() throws IOException {
+        int n = nextInt();
+        skipLine();
+        Simulation.RADIUS = nextDouble();
+        skipLine();
+        if (n < 0) throw error("negative number of bodies");
+
+        // The radius of the bodies depends on the radius of the universe, so it is calculated after it is set
+        double radius = CelestialBody.avgBodyToUniverseRadius();
+        BodyStore bodies = new BodyStore(n);
+        for (int i = 0; i < n; i++) {
+            if (!skipWhitespace(true)) throw error("expected " + n + " bodies but found " + i);
+            double px = nextDouble();
+            double py = nextDouble();
+            double vx = nextDouble();
+            double vy = nextDouble();
+            double mass = nextDouble();
+            int red = nextInt();
+            int green = nextInt();
+            int blue = nextInt();
+            skipLine();
+            bodies.set(i, px, py, 0, vx, vy, 0, mass, radius, color(red, green, blue));
+        }
+        return bodies;
+    }
+
+    // Returns the shared Color object for the components
+    private Color color(int red, int green, int blue) throws IOException {
+        if ((red | green | blue) < 0 || red > 255 || green > 255 || blue > 255) throw error("invalid color " + red + " " + green + " " + blue);
+        int rgb = (red << 16) | (green << 8) | blue;
+        Color color = this.colors.get(rgb);
+        if (color == null) {
+            color = new Color(rgb);
+            this.colors.put(rgb, color);
+        }
+        return color;
+    }
+
+    // ****************** //
+    //  Tokens            //
+    // ****************** //
+
+    // Reads more bytes, so that at least min bytes are in the buffer unless the stream ends
+    private void fill(int min) throws IOException {
+        if (this.limit - this.position >= min || this.end) return;
+        int remaining = this.limit - this.position;
+        System.arraycopy(this.buffer, this.position, this.buffer, 0, remaining);
+        this.position = 0;
+        this.limit = remaining;
+        while (this.limit < min && !this.end) {
+            int read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (read < 0) this.end = true;
+            else this.limit += read;
+        }
+    }
+
+    // Skips spaces and tabs, and line breaks if newLines is true. Returns false at the end of the stream
+    private boolean skipWhitespace(boolean newLines) throws IOException {
+        while (true) {
+            if (this.position == this.limit) {
+                fill(1);
+                if (this.position == this.limit) return false;
+            }
+            byte b = this.buffer[this.position];
+            if (b == ' ' || b == '\t' || b == '\r') {
+                this.position++;
+            } else if (b == '\n' && newLines) {
+                this.position++;
+                this.line++;
+            } else {
+                return true;
+            }
+        }
+    }
+
+    // Skips the rest of the line including the line break
+    private void skipLine() throws IOException {
+        while (true) {
+            if (this.position == this.limit) {
+                fill(1);
+                if (this.position == this.limit) return;
+            }
+            if (this.buffer[this.position++] == '\n') {
+                this.line++;
+                return;
+            }
+        }
+    }
+
+    // Moves to the next value on the current line and returns the index of the byte after it
+    private int nextToken() throws IOException {
+        if (!skipWhitespace(false)) throw error("unexpected end of file");
+        fill(MAX_TOKEN);
+        int end = this.position;
+        while (end < this.limit && !isDelimiter(this.buffer[end])) end++;
+        if (end == this.position) throw error("missing value");
+        if (end == this.limit && !this.end) throw error("value too long");
+        return end;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private int nextInt() throws IOException {
+        int end = nextToken();
+        int i = this.position;
+        boolean negative = this.buffer[i] == '-';
+        if (negative || this.buffer[i] == '+') i++;
+        if (i == end) throw error("invalid number");
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = this.buffer[i] - '0';
+            if (digit < 0 || digit > 9) throw error("invalid number " + token(end));
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) throw error("number too large " + token(end));
+        }
+        if (!negative && value > Integer.MAX_VALUE) throw error("number too large " + token(end));
+        this.position = end;
+        return (int) (negative ? -value : value);
+    }
+
+    private double nextDouble() throws IOException {
+        int end = nextToken();
+        byte[] b = this.buffer;
+        int i = this.position;
+        boolean negative = b[i] == '-';
+        if (negative || b[i] == '+') i++;
+
+        long mantissa = 0;
+        int digits = 0;             // Significant digits in the mantissa
+        int exponent = 0;
+        boolean any = false;        // True if there is at least one digit
+        for (; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+            any = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (b[i] - '0');
+                if (mantissa != 0) digits++;
+            } else {
+                digits++;
+                exponent++;
+            }
+        }
+        if (i < end && b[i] == '.') {
+            for (i++; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b[i] - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                } else {
+                    digits++;
+                }
+            }
+        }
+        if (any && i < end && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExponent = i < end && b[i] == '-';
+            if (i < end && (b[i] == '-' || b[i] == '+')) i++;
+            int e = 0;
+            boolean anyExponent = false;
+            for (; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+                anyExponent = true;
+                if (e < 100000) e = e * 10 + (b[i] - '0');
+            }
+            if (!anyExponent) any = false;
+            exponent += negativeExponent ? -e : e;
+        }
+
+        double value;
+        if (!any || i != end || digits > 15) {
+            // Not a plain decimal number or too many digits for the exact path, e.g. NaN or 0.1000000000000000055511
+            value = parseSlow(end);
+        } else if (mantissa == 0) {
+            value = 0;
+        } else if (exponent >= 0 && exponent <= 22) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && exponent >= -22) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else if (exponent > 22 && exponent <= 22 + 15 && mantissa < (1L << 53) / (long) POWERS_OF_TEN[exponent - 22]) {
+            // The mantissa multiplied with the first part of the power of ten still is an exact integer
+            value = (mantissa * (long) POWERS_OF_TEN[exponent - 22]) * POWERS_OF_TEN[22];
+        } else {
+            value = parseSlow(end);
+        }
+        this.position = end;
+        return negative ? -value : value;
+    }
+
+    // Parses the current token with Double.parseDouble, without the sign
+    private double parseSlow(int end) throws IOException {
+        String token = token(end);
+        try {
+            return Math.abs(Double.parseDouble(token));
+        } catch (NumberFormatException e) {
+            throw error("invalid number " + token);
+        }
+    }
+
+    private String token(int end) {
+        return new String(this.buffer, this.position, end - this.position, StandardCharsets.US_ASCII);
+    }
+
+    private IOException error(String message) {
+        return new IOException("line " + this.line + ": " + message);
+    }
+}
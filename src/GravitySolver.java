@@ -0,0 +1,24 @@
+/*
+    A gravity solver calculates the accelerations of the bodies of a BodyStore.
+    The calculation only reads the positions and writes the accelerations, so the
+    positions must not be changed before computeForces returns.
+ */
+public interface GravitySolver {
+
+    // Calculates the acceleration of every body inside the universe for the current positions
+    // Bodies outside of the universe get no acceleration
+    void computeForces(BodyStore bodies);
+
+    // Calculates the accelerations of the first count bodies of the active list only, e.g. for block time steps.
+    // The tree is built from all bodies, the accelerations of the other bodies are not changed
+    void computeForces(BodyStore bodies, int[] active, int count);
+
+    // Draws the quads of all leaves that contain a body in 2D, ignoring the Z-Coordinates
+    void drawLeafQuads();
+
+    // Draws all (complete) quads in 2D, ignoring the Z-Coordinates
+    void drawCompleteQuads();
+
+    // Draws the center masses of the inner nodes in 2D, ignoring the Z-Coordinates
+    void drawCenterMasses();
+}
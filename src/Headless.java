@@ -0,0 +1,230 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/*
+    Runs the simulation without a window, e.g. on machines without a display.
+    Everything is set by the command line arguments, nothing is read from System.in and StdDraw is never loaded.
+
+    Usage: java Headless (--input <file> | --random <n> | --resume) [options]
+
+    --input <file>           Reads the bodies from a text or binary galaxy file, see CelestialBody.readGalaxy
+    --random <n>             Generates about n random bodies instead
+    --steps <n>              Number of steps, default 1000
+    --dt <dt>                Time step, default Simulation.dt
+    --adaptive-dt            Chooses dt after every step, --dt is the first step. See TimestepController
+    --dt-accuracy <a>        Accuracy of the adaptive dt, default Simulation.dtAccuracy
+    --dt-softening <l>       Softening length of the adaptive dt, default the mean distance between the bodies
+    --dt-outliers <f>        Fraction of the bodies that does not limit the adaptive dt, default Simulation.dtOutliers
+    --dt-min <dt>            Smallest adaptive dt, default Simulation.minDt
+    --dt-max <dt>            Largest adaptive dt, default Simulation.maxDt
+    --integrator <method>    euler, leapfrog (default), velocityverlet, yoshida4 or blockleapfrog, see Integrator
+    --block-bins <n>         Number of time step bins of blockleapfrog, default Simulation.blockTimestepBins
+    --block-accuracy <a>     Accuracy of the time steps of blockleapfrog, default Simulation.blockTimestepAccuracy
+    --theta <theta>          Opening angle of the Barnes Hut Algorithm, default Simulation.theta
+    --quadrupole             Uses the quadrupole moments of the nodes
+    --grouped                Walks the flat trees once per group of nearby bodies, see Simulation.groupedWalk
+    --fmm                    Uses the fast multipole method instead of Barnes Hut, see FmmSolver
+    --3d                     Enables the z coordinate
+    --octree                 Uses the legacy Octree instead of the flat trees
+    --build <mode>           Build mode of the flat trees: insert, parallel or morton
+    --refit                  Keeps the flat tree across steps and only moves the bodies that left their leaf
+    --refit-factor <f>       Growth of the nodes per body that triggers a full build, default Simulation.refitRebuildFactor
+    --serial                 Runs everything on the calling thread
+    --report <n>             Prints the progress every n steps, 0 (default) prints nothing
+    --checkpoint <dir>       Directory of the checkpoints, default Simulation.checkpointDirectory
+    --checkpoint-every <n>   Writes a checkpoint every n steps in the background and one at the end
+    --resume                 Resumes from the latest checkpoint instead of --input or --random.
+                             dt, the radius and --3d are taken from the checkpoint, --steps counts from the start of the run
+    --trajectory <file>      Writes the positions after every step into a trajectory file, see TrajectoryWriter
+    --trajectory-every <k>   Only writes every k-th step
+    --trajectory-bodies <m>  Only writes every m-th body
+    --backpressure <mode>    What happens if the trajectory writer falls behind: block (default), drop or spill
+    --metrics <file>         Writes the timers and counters into a CSV file (JSON lines for .json), see MetricsLog
+    --metrics-every <n>      Writes a line of metrics every n steps, default Simulation.metricsInterval
+    --output <file>          Writes the final state to a galaxy file, binary if the name ends with .nbody (see BinaryGalaxy)
+ */
+public class Headless {
+
+    public static void main(String[] args) {
+        // Makes sure AWT never tries to connect to a display
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            run(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java Headless (--input <file> | --random <n> | --resume) [--steps <n>] [--dt <dt>]");
+            System.err.println("       [--adaptive-dt] [--dt-accuracy <a>] [--dt-softening <l>] [--dt-outliers <f>]");
+            System.err.println("       [--dt-min <dt>] [--dt-max <dt>]");
+            System.err.println("       [--integrator euler|leapfrog|velocityverlet|yoshida4|blockleapfrog] [--block-bins <n>]");
+            System.err.println("       [--block-accuracy <a>] [--theta <theta>] [--grouped] [--fmm]");
+            System.err.println("       [--quadrupole] [--3d] [--octree] [--build insert|parallel|morton]");
+            System.err.println("       [--refit] [--refit-factor <f>] [--serial]");
+            System.err.println("       [--report <n>] [--checkpoint <dir>] [--checkpoint-every <n>] [--resume]");
+            System.err.println("       [--trajectory <file>] [--trajectory-every <k>] [--trajectory-bodies <m>] [--backpressure block|drop|spill]");
+            System.err.println("       [--metrics <file>] [--metrics-every <n>] [--output <file>]");
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("I/O error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Parses the arguments and runs the integration loop
+    private static void run(String[] args) throws IOException {
+        File input = null, output = null;
+        int random = 0, steps = 1000, report = 0, checkpointInterval = 0;
+        boolean resume = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--input":      input = new File(value(args, ++i)); break;
+                case "--random":     random = parseInt(args, ++i); break;
+                case "--steps":      steps = parseInt(args, ++i); break;
+                case "--dt":         Simulation.dt = parseDouble(args, ++i); break;
+                case "--adaptive-dt": Simulation.adaptiveDt = true; break;
+                case "--dt-accuracy": Simulation.dtAccuracy = parseDouble(args, ++i); break;
+                case "--dt-softening": Simulation.dtSoftening = parseDouble(args, ++i); break;
+                case "--dt-outliers": Simulation.dtOutliers = parseDouble(args, ++i); break;
+                case "--dt-min":     Simulation.minDt = parseDouble(args, ++i); break;
+                case "--dt-max":     Simulation.maxDt = parseDouble(args, ++i); break;
+                case "--integrator": Simulation.integrationMethod = parseEnum(IntegrationMethod.class, value(args, ++i)); break;
+                case "--block-bins": Simulation.blockTimestepBins = parseInt(args, ++i); break;
+                case "--block-accuracy": Simulation.blockTimestepAccuracy = parseDouble(args, ++i); break;
+                case "--theta":      Simulation.theta = parseDouble(args, ++i); break;
+                case "--quadrupole": Simulation.useQuadrupole = true; break;
+                case "--grouped":    Simulation.groupedWalk = true; break;
+                case "--fmm":        Simulation.useFmm = true; break;
+                case "--3d":         Simulation.enableZCoordinate = true; break;
+                case "--octree":     Simulation.useFlatOctree = false; break;
+                case "--build":      Simulation.buildMode = parseEnum(BuildMode.class, value(args, ++i)); break;
+                case "--refit":      Simulation.refitTree = true; break;
+                case "--refit-factor": Simulation.refitRebuildFactor = parseDouble(args, ++i); break;
+                case "--serial":     Parallel.enabled = false; break;
+                case "--report":     report = parseInt(args, ++i); break;
+                case "--checkpoint": Simulation.checkpointDirectory = new File(value(args, ++i)); break;
+                case "--checkpoint-every": checkpointInterval = parseInt(args, ++i); break;
+                case "--resume":     resume = true; break;
+                case "--trajectory": Simulation.trajectoryFile = new File(value(args, ++i)); break;
+                case "--trajectory-every": Simulation.trajectoryStepStride = parseInt(args, ++i); break;
+                case "--trajectory-bodies": Simulation.trajectoryBodyStride = parseInt(args, ++i); break;
+                case "--backpressure": Simulation.trajectoryBackpressure = parseEnum(Backpressure.class, value(args, ++i)); break;
+                case "--metrics":
+                    // Must be set before Metrics is loaded, ENABLED is read only once
+                    System.setProperty("nbody.metrics", "true");
+                    Simulation.metricsFile = new File(value(args, ++i));
+                    break;
+                case "--metrics-every": Simulation.metricsInterval = parseInt(args, ++i); break;
+                case "--output":     output = new File(value(args, ++i)); break;
+                default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if ((input != null ? 1 : 0) + (random > 0 ? 1 : 0) + (resume ? 1 : 0) != 1) {
+            throw new IllegalArgumentException("Exactly one of --input, --random or --resume must be given");
+        }
+        if (checkpointInterval < 0) throw new IllegalArgumentException("--checkpoint-every must not be negative");
+        if (!(Simulation.dt > 0)) throw new IllegalArgumentException("--dt must be positive");
+        if (!(Simulation.theta > 0)) throw new IllegalArgumentException("--theta must be positive");
+        if (Simulation.metricsInterval <= 0) throw new IllegalArgumentException("--metrics-every must be positive");
+        if (Simulation.dtSoftening < 0) throw new IllegalArgumentException("--dt-softening must not be negative");
+        if (!(Simulation.dtOutliers >= 0 && Simulation.dtOutliers < 1)) {
+            throw new IllegalArgumentException("--dt-outliers must be at least 0 and less than 1");
+        }
+        if (Simulation.refitRebuildFactor < 1) throw new IllegalArgumentException("--refit-factor must be at least 1");
+
+        // The options above must be set before the bodies are created, e.g. the z coordinate of random bodies
+        BodyStore store;
+        long first = 0;
+        if (resume) {
+            Checkpoint checkpoint = Checkpoint.read(Simulation.checkpointDirectory);
+            checkpoint.restore();
+            store = checkpoint.getBodies();
+            first = checkpoint.getStep();
+            System.out.println("Resuming after step " + first);
+        } else {
+            CelestialBody[] bodies = input != null ? CelestialBody.readGalaxy(input) : Simulation.generateBodies(random);
+            store = BodyStore.gather(bodies);
+        }
+        GravitySolver solver = Simulation.createSolver(store);
+        Integrator integrator = Simulation.createIntegrator();
+        TimestepController timesteps = Simulation.createTimestepController();
+        double time = 0;                    // Simulated time of this run
+
+        System.out.println("Simulating " + store.size() + " bodies for " + (steps - first) + " steps with " + solver.getClass().getSimpleName()
+                + " and " + integrator.getClass().getSimpleName());
+        long start = System.nanoTime();
+        // Declared outside of the try, so its counters can be printed after it has been closed
+        TrajectoryWriter trajectory = Simulation.createTrajectoryWriter(store);
+        try (trajectory;
+             CheckpointWriter checkpoints = checkpointInterval > 0
+                ? new CheckpointWriter(Simulation.checkpointDirectory, checkpointInterval, store.size()) : null;
+             MetricsLog metrics = Simulation.createMetricsLog()) {
+            for (long step = first + 1; step <= steps; step++) {
+                double dt = Simulation.dt;
+                integrator.step(store, solver, dt);
+                time += dt;
+                // Before the checkpoint, which stores the dt of the next step
+                if (Simulation.adaptiveDt) Simulation.dt = timesteps.next(store, dt, Simulation.dtAccuracy);
+                if (checkpoints != null) checkpoints.afterStep(store, step);
+                if (trajectory != null) trajectory.afterStep(store, step);
+                if (metrics != null) metrics.afterStep(store, step);
+
+                if (report > 0 && step % report == 0) {
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.println(String.format(Locale.ROOT, "Step %d: %.3f s, %.2f ms/step, simulated time %.4g, dt %.4g",
+                            step, seconds, seconds * 1000 / (step - first), time, Simulation.dt));
+                }
+            }
+
+            // The final state is always saved, so the run can be continued with a larger --steps
+            if (checkpoints != null && steps > first && steps % checkpointInterval != 0) checkpoints.submit(store, steps);
+        }
+        if (trajectory != null) {
+            System.out.println("Trajectory: " + trajectory.getFrames() + " frames, " + trajectory.getDropped() + " dropped, "
+                    + trajectory.getSpilled() + " spilled buffers");
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.ROOT, "Done: %.3f s, %.2f ms/step, simulated time %.4g",
+                seconds, steps > first ? seconds * 1000 / (steps - first) : 0, time));
+        if (timesteps.getClampedSteps() > 0) {
+            System.out.println("The adaptive dt was clamped at --dt-min in " + timesteps.getClampedSteps() + " steps");
+        }
+
+        if (output != null && output.getName().endsWith(BinaryGalaxy.EXTENSION)) {
+            BinaryGalaxy.write(store, output);
+        } else if (output != null) {
+            CelestialBody.writeGalaxy(store, output);
+        }
+    }
+
+    // Returns the value of the option at index i
+    private static String value(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        return args[i];
+    }
+
+    private static int parseInt(String[] args, int i) {
+        try {
+            return Integer.parseInt(value(args, i));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + args[i]);
+        }
+    }
+
+    private static double parseDouble(String[] args, int i) {
+        try {
+            return Double.parseDouble(value(args, i));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + args[i]);
+        }
+    }
+
+    // Returns the constant of the enum with the name, ignoring the case
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(name)) return constant;
+        }
+        throw new IllegalArgumentException("Unknown " + type.getSimpleName() + ": " + name);
+    }
+}
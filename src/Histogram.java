@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+/*
+    Histogram of non-negative long values, e.g. durations in nanoseconds or interactions per body.
+
+    The buckets are logarithmic with 8 sub-buckets per power of two, so every bucket is at most 1/8 of its
+    lower bound wide and a percentile is accurate to 12.5%. Values below 8 get a bucket of their own:
+
+    bucket: 0 .. 7     8 .. 15    16 .. 23            24 .. 31            ...
+    values: 0 .. 7     8 .. 15    16, 18, .., 30      32, 36, .., 60      ...
+
+    The histogram is not thread safe, see Metrics for the shared ones.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    // Adds a value, negative values are counted as 0
+    public void record(long value) {
+        if (value < 0) value = 0;
+        this.counts[bucket(value)]++;
+        this.count++;
+        this.sum += value;
+        if (value > this.max) this.max = value;
+    }
+
+    // Adds all values of the other histogram
+    public void add(Histogram other) {
+        for (int b = 0; b < BUCKETS; b++) this.counts[b] += other.counts[b];
+        this.count += other.count;
+        this.sum += other.sum;
+        if (other.max > this.max) this.max = other.max;
+    }
+
+    // Removes all values
+    public void clear() {
+        Arrays.fill(this.counts, 0);
+        this.count = 0;
+        this.sum = 0;
+        this.max = 0;
+    }
+
+    // Returns a copy of this histogram
+    public Histogram copy() {
+        Histogram copy = new Histogram();
+        copy.add(this);
+        return copy;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getSum() {
+        return this.sum;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    // Returns the mean of all values, 0 if there are none
+    public double getMean() {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    // Returns the value below which the fraction p (0..1) of the values lie, i.e. the upper bound of its bucket
+    // The result is never larger than the largest value. Returns 0 if there are no values
+    public long getPercentile(double p) {
+        if (this.count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * this.count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += this.counts[b];
+            if (seen >= rank) return Math.min(upperBound(b), this.max);
+        }
+        return this.max;
+    }
+
+    // Returns the bucket of a non-negative value
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Returns the largest value of the bucket
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
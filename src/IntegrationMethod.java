@@ -0,0 +1,10 @@
+// Defines how the bodies are moved from one step to the next, see Integrator
+public enum IntegrationMethod {
+    Euler,          // Semi-implicit Euler: kick by dt, then drift by dt. First order
+    Leapfrog,       // Kick-drift-kick leapfrog: half kick, drift, new forces, half kick. Second order
+    VelocityVerlet, // Velocity Verlet: the positions are moved with the velocity and the acceleration, then the velocity
+                    // is kicked with the mean of the old and the new acceleration. Same trajectory as Leapfrog
+    Yoshida4,       // Yoshida's fourth order composition of three leapfrog steps, the middle one going backwards
+    BlockLeapfrog   // Leapfrog with individual power of two time steps, only the bodies at the end of their step
+                    // get new forces. See BlockTimestepIntegrator
+}
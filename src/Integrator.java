@@ -0,0 +1,19 @@
+/*
+    An integrator advances the bodies by one time step. It calls the solver for the accelerations as often
+    as the method needs, the number of force calculations per step is the main cost of a method:
+
+    method          order   force calculations per step     symplectic
+    Euler           1       1                               yes (semi-implicit)
+    Leapfrog        2       1                               yes
+    VelocityVerlet  2       1                               yes
+    Yoshida4        4       3                               yes
+    BlockLeapfrog   2       2^k for the bodies of bin k     no (the steps change)
+
+    The energy error of a method of order p shrinks with dt^p, so a higher order method reaches the same
+    accuracy with a much larger dt. See IntegrationMethod and Simulation.createIntegrator.
+ */
+public interface Integrator {
+
+    // Advances the bodies by dt. The accelerations are left at the values of the new positions
+    void step(BodyStore bodies, GravitySolver solver, double dt);
+}
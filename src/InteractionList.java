@@ -0,0 +1,116 @@
+import java.util.Arrays;
+
+/*
+    The sources acting on a group of nearby bodies, collected by one walk of a FlatTree for the whole group
+    (see Simulation.groupedWalk). The approximated nodes and the bodies of the opened leaves are point masses
+    in one list, the nodes with quadrupole moments are kept in a second one. The accelerations of every body
+    of the group are then calculated by two tight loops over consecutive arrays, see ForceKernel.
+
+    The bodies of the group are part of the list themselves, so a source at distance 0 is skipped.
+    The list is not thread safe, every task uses its own.
+ */
+public class InteractionList {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Bodies of the group
+    int[] members = new int[32];
+    int memberCount;
+
+    // Point masses
+    int count;
+    double[] x = new double[INITIAL_CAPACITY];
+    double[] y = new double[INITIAL_CAPACITY];
+    double[] z = new double[INITIAL_CAPACITY];
+    double[] m = new double[INITIAL_CAPACITY];
+
+    // Nodes with quadrupole moments, see FlatTree.updateForce
+    int quadrupoleCount;
+    double[] qx = new double[INITIAL_CAPACITY];
+    double[] qy = new double[INITIAL_CAPACITY];
+    double[] qz = new double[INITIAL_CAPACITY];
+    double[] qm = new double[INITIAL_CAPACITY];
+    double[] qxx = new double[INITIAL_CAPACITY];
+    double[] qxy = new double[INITIAL_CAPACITY];
+    double[] qxz = new double[INITIAL_CAPACITY];
+    double[] qyy = new double[INITIAL_CAPACITY];
+    double[] qyz = new double[INITIAL_CAPACITY];
+    double[] qzz = new double[INITIAL_CAPACITY];
+
+    // Acceleration of the last evaluate, without the factor G
+    double ax, ay, az;
+    private final double[] acceleration = new double[3];
+
+    // Removes the members and the sources
+    void clear() {
+        this.memberCount = 0;
+        this.count = 0;
+        this.quadrupoleCount = 0;
+    }
+
+    // Adds body i to the group
+    void addMember(int i) {
+        if (this.memberCount == this.members.length) this.members = Arrays.copyOf(this.members, this.memberCount * 2);
+        this.members[this.memberCount++] = i;
+    }
+
+    // Adds a point mass
+    void add(double x, double y, double z, double m) {
+        if (this.count == this.x.length) {
+            int capacity = this.count * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.z = Arrays.copyOf(this.z, capacity);
+            this.m = Arrays.copyOf(this.m, capacity);
+        }
+        int k = this.count++;
+        this.x[k] = x;
+        this.y[k] = y;
+        this.z[k] = z;
+        this.m[k] = m;
+    }
+
+    // Adds a node with its center of mass, mass and quadrupole moment
+    void addQuadrupole(double x, double y, double z, double m,
+                       double qxx, double qxy, double qxz, double qyy, double qyz, double qzz) {
+        if (this.quadrupoleCount == this.qx.length) {
+            int capacity = this.quadrupoleCount * 2;
+            this.qx = Arrays.copyOf(this.qx, capacity);
+            this.qy = Arrays.copyOf(this.qy, capacity);
+            this.qz = Arrays.copyOf(this.qz, capacity);
+            this.qm = Arrays.copyOf(this.qm, capacity);
+            this.qxx = Arrays.copyOf(this.qxx, capacity);
+            this.qxy = Arrays.copyOf(this.qxy, capacity);
+            this.qxz = Arrays.copyOf(this.qxz, capacity);
+            this.qyy = Arrays.copyOf(this.qyy, capacity);
+            this.qyz = Arrays.copyOf(this.qyz, capacity);
+            this.qzz = Arrays.copyOf(this.qzz, capacity);
+        }
+        int k = this.quadrupoleCount++;
+        this.qx[k] = x;
+        this.qy[k] = y;
+        this.qz[k] = z;
+        this.qm[k] = m;
+        this.qxx[k] = qxx;
+        this.qxy[k] = qxy;
+        this.qxz[k] = qxz;
+        this.qyy[k] = qyy;
+        this.qyz[k] = qyz;
+        this.qzz[k] = qzz;
+    }
+
+    // Calculates the acceleration of all sources at the position into ax, ay and az, see ForceKernel
+    void evaluate(double x, double y, double z) {
+        double[] out = this.acceleration;
+        out[0] = 0;
+        out[1] = 0;
+        out[2] = 0;
+        ForceKernel.INSTANCE.pointMasses(this.x, this.y, this.z, this.m, 0, this.count, x, y, z, out, 0);
+        if (this.quadrupoleCount > 0) {
+            ForceKernel.INSTANCE.quadrupoles(this, 0, this.quadrupoleCount, x, y, z, out, 0);
+        }
+        this.ax = out[0];
+        this.ay = out[1];
+        this.az = out[2];
+    }
+}
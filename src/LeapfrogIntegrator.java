@@ -0,0 +1,52 @@
+/*
+    Kick-drift-kick leapfrog integration:
+
+    v += dt/2 * a(x)
+    x += dt * v
+    v += dt/2 * a(x)
+
+    The acceleration of the last kick belongs to the positions at the end of the step, so it is reused for
+    the first kick of the next step and every step only needs one force calculation, just like Euler.
+    The velocities and the positions are synchronized after every step, e.g. for drawing and checkpoints.
+
+    A step can be composed of several leapfrog steps with the given weights (fractions of dt), see YoshidaIntegrator.
+    The second half kick of one leapfrog step and the first one of the next are merged into one pass.
+ */
+public class LeapfrogIntegrator implements Integrator {
+
+    private final double[] weights;     // Lengths of the leapfrog steps as fractions of dt
+    private BodyStore bodies;           // The store whose accelerations belong to its current positions
+
+    // Constructor, one leapfrog step per step
+    public LeapfrogIntegrator() {
+        this(1);
+    }
+
+    // Constructor, the steps are composed of leapfrog steps of the lengths weights * dt
+    protected LeapfrogIntegrator(double... weights) {
+        this.weights = weights;
+    }
+
+    @Override
+    public void step(BodyStore bodies, GravitySolver solver, double dt) {
+        // The accelerations of a new store (e.g. resumed from a checkpoint) have never been calculated
+        if (this.bodies != bodies) {
+            solver.computeForces(bodies);
+            this.bodies = bodies;
+        }
+
+        double kick = 0;
+        for (double weight : this.weights) {
+            kick += weight / 2;
+            kickDrift(bodies, kick * dt, weight * dt);
+            solver.computeForces(bodies);
+            kick = weight / 2;
+        }
+        bodies.kick(kick * dt);
+    }
+
+    // Kicks the velocities by kick * a and moves the positions by drift * v
+    protected void kickDrift(BodyStore bodies, double kick, double drift) {
+        bodies.kickDrift(kick, drift);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+    Timers and counters showing where the time of a step goes.
+
+    Metrics are enabled with -Dnbody.metrics=true. ENABLED is a static final field, so with metrics disabled
+    the JIT removes every "if (Metrics.ENABLED)" block and the instrumented code runs exactly as before.
+
+    Recorded are:
+    - the duration of every phase of a step (see Phase) in nanoseconds
+    - the number of nodes and the maximum depth of the last tree
+    - the number of bodies walked and their interactions: direct pairs with bodies of a leaf and
+      approximations by the center of mass of a node, with a histogram of the interactions per body
+
+    The values are collected until they are taken with drain, e.g. by the MetricsLog after every interval.
+ */
+public class Metrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("nbody.metrics");
+
+    // The timed phases of a step
+    public enum Phase {
+        Build,          // Building the tree
+        Force,          // Walking the tree for all bodies
+        Integration,    // Moving the bodies
+        Render,         // Drawing a frame into the offscreen canvas
+        Show            // Copying the offscreen canvas to the screen, StdDraw.show
+    }
+
+    // Counts the interactions of the tree walks of one task, the totals are merged by flush
+    public static class Walk {
+        int direct;                 // Direct pairs of the current body, used by the recursive Octree walk
+        int approximated;           // Approximated nodes of the current body
+        private long bodies;
+        private long directTotal;
+        private long approximatedTotal;
+        private final Histogram interactions = new Histogram();
+
+        // Adds the interactions of one body
+        void add(int direct, int approximated) {
+            this.bodies++;
+            this.directTotal += direct;
+            this.approximatedTotal += approximated;
+            this.interactions.record(direct + approximated);
+        }
+
+        // Adds the interactions counted in direct and approximated as one body and resets them
+        void endBody() {
+            add(this.direct, this.approximated);
+            this.direct = 0;
+            this.approximated = 0;
+        }
+
+        // Adds the counts of this task to the totals
+        void flush() {
+            synchronized (Metrics.class) {
+                Metrics.bodies += this.bodies;
+                Metrics.directPairs += this.directTotal;
+                Metrics.approximations += this.approximatedTotal;
+                Metrics.interactions.add(this.interactions);
+            }
+        }
+    }
+
+    // The values collected between two calls of drain
+    public static class Snapshot {
+        private final Histogram[] phases;
+        private final int nodes;
+        private final int maxDepth;
+        private final long bodies;
+        private final long directPairs;
+        private final long approximations;
+        private final Histogram interactions;
+
+        private Snapshot(Histogram[] phases, int nodes, int maxDepth, long bodies, long directPairs,
+                         long approximations, Histogram interactions) {
+            this.phases = phases;
+            this.nodes = nodes;
+            this.maxDepth = maxDepth;
+            this.bodies = bodies;
+            this.directPairs = directPairs;
+            this.approximations = approximations;
+            this.interactions = interactions;
+        }
+
+        // Returns the durations of the phase in nanoseconds
+        public Histogram getPhase(Phase phase) {
+            return this.phases[phase.ordinal()];
+        }
+
+        // Returns the number of nodes of the last tree
+        public int getNodes() {
+            return this.nodes;
+        }
+
+        // Returns the maximum depth of the last tree
+        public int getMaxDepth() {
+            return this.maxDepth;
+        }
+
+        // Returns the number of tree walks, i.e. one per body and step
+        public long getBodies() {
+            return this.bodies;
+        }
+
+        public long getDirectPairs() {
+            return this.directPairs;
+        }
+
+        public long getApproximations() {
+            return this.approximations;
+        }
+
+        // Returns the number of interactions (direct pairs and approximations) per body
+        public Histogram getInteractions() {
+            return this.interactions;
+        }
+    }
+
+    // Guarded by Metrics.class
+    private static final Histogram[] phases = new Histogram[Phase.values().length];
+    private static int nodes;
+    private static int maxDepth;
+    private static long bodies;
+    private static long directPairs;
+    private static long approximations;
+    private static final Histogram interactions = new Histogram();
+
+    static {
+        for (int p = 0; p < phases.length; p++) phases[p] = new Histogram();
+    }
+
+    // Returns the start time of a phase, 0 if the metrics are disabled
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Records the duration of a phase that started at the given time, see start
+    public static void stop(Phase phase, long start) {
+        if (!ENABLED) return;
+        long duration = System.nanoTime() - start;
+        synchronized (Metrics.class) {
+            phases[phase.ordinal()].record(duration);
+        }
+    }
+
+    // Records the size of a tree that has just been built
+    public static synchronized void treeBuilt(int nodes, int maxDepth) {
+        Metrics.nodes = nodes;
+        Metrics.maxDepth = maxDepth;
+    }
+
+    // Returns a new counter for the tree walks of one task, null if the metrics are disabled
+    public static Walk walk() {
+        return ENABLED ? new Walk() : null;
+    }
+
+    // Returns the values collected since the last call and starts collecting anew
+    public static synchronized Snapshot drain() {
+        Histogram[] copies = new Histogram[phases.length];
+        for (int p = 0; p < phases.length; p++) {
+            copies[p] = phases[p].copy();
+            phases[p].clear();
+        }
+        Snapshot snapshot = new Snapshot(copies, nodes, maxDepth, bodies, directPairs, approximations, interactions.copy());
+        bodies = 0;
+        directPairs = 0;
+        approximations = 0;
+        interactions.clear();
+        return snapshot;
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/*
+    Writes the Metrics of the last 'interval' steps into a log file, one line per interval.
+    The file is written as JSON lines if its name ends with .json or .jsonl, otherwise as CSV with a header.
+
+    For every phase the number of measurements and the mean, median, 99th percentile and maximum duration
+    in nanoseconds are written, followed by the size of the last tree and the interactions of the tree walks.
+    The line is written on the thread calling afterStep, it only takes a few microseconds.
+ */
+public class MetricsLog implements StepListener, AutoCloseable {
+
+    private final BufferedWriter writer;
+    private final int interval;
+    private final boolean json;
+    private long last = -1;             // Last step seen by afterStep
+    private long written = -1;          // Last step written to the log
+    private IOException error;          // The first error, nothing is written after it
+
+    // Constructor, writes the metrics every interval steps into the file
+    public MetricsLog(File file, int interval) throws IOException {
+        if (interval <= 0) throw new IllegalArgumentException("The metrics interval must be positive");
+        if (!Metrics.ENABLED) throw new IllegalStateException("The metrics are disabled, see Metrics");
+        this.interval = interval;
+        String name = file.getName();
+        this.json = name.endsWith(".json") || name.endsWith(".jsonl");
+        this.writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+        if (!this.json) {
+            try {
+                writeHeader();
+            } catch (IOException e) {
+                this.writer.close();
+                throw e;
+            }
+        }
+        // Everything before the first step, e.g. a previous run, does not belong to this log
+        Metrics.drain();
+    }
+
+    // Writes the metrics of the last interval if it is complete
+    @Override
+    public void afterStep(BodyStore bodies, long step) {
+        this.last = step;
+        if (step % this.interval == 0) write(step);
+    }
+
+    // Writes the metrics collected since the last line
+    private void write(long step) {
+        if (this.error != null) return;
+        Metrics.Snapshot snapshot = Metrics.drain();
+        try {
+            if (this.json) writeJson(step, snapshot);
+            else writeCsv(step, snapshot);
+            this.writer.flush();
+        } catch (IOException e) {
+            this.error = e;
+            System.err.println("Could not write the metrics: " + e.getMessage());
+        }
+        this.written = step;
+    }
+
+    private void writeHeader() throws IOException {
+        StringBuilder line = new StringBuilder("step");
+        for (Metrics.Phase phase : Metrics.Phase.values()) {
+            String name = phase.name().toLowerCase(Locale.ROOT);
+            line.append(',').append(name).append("_count")
+                .append(',').append(name).append("_mean_ns")
+                .append(',').append(name).append("_p50_ns")
+                .append(',').append(name).append("_p99_ns")
+                .append(',').append(name).append("_max_ns");
+        }
+        line.append(",nodes,max_depth,bodies,direct_pairs,approximations,interactions_mean,interactions_p99,interactions_max");
+        this.writer.write(line.toString());
+        this.writer.newLine();
+    }
+
+    private void writeCsv(long step, Metrics.Snapshot snapshot) throws IOException {
+        StringBuilder line = new StringBuilder();
+        line.append(step);
+        for (Metrics.Phase phase : Metrics.Phase.values()) {
+            Histogram h = snapshot.getPhase(phase);
+            line.append(',').append(h.getCount())
+                .append(',').append(format(h.getMean()))
+                .append(',').append(h.getPercentile(0.5))
+                .append(',').append(h.getPercentile(0.99))
+                .append(',').append(h.getMax());
+        }
+        Histogram interactions = snapshot.getInteractions();
+        line.append(',').append(snapshot.getNodes())
+            .append(',').append(snapshot.getMaxDepth())
+            .append(',').append(snapshot.getBodies())
+            .append(',').append(snapshot.getDirectPairs())
+            .append(',').append(snapshot.getApproximations())
+            .append(',').append(format(interactions.getMean()))
+            .append(',').append(interactions.getPercentile(0.99))
+            .append(',').append(interactions.getMax());
+        this.writer.write(line.toString());
+        this.writer.newLine();
+    }
+
+    private void writeJson(long step, Metrics.Snapshot snapshot) throws IOException {
+        StringBuilder line = new StringBuilder();
+        line.append("{\"step\":").append(step);
+        for (Metrics.Phase phase : Metrics.Phase.values()) {
+            Histogram h = snapshot.getPhase(phase);
+            line.append(",\"").append(phase.name().toLowerCase(Locale.ROOT)).append("\":{")
+                .append("\"count\":").append(h.getCount())
+                .append(",\"mean_ns\":").append(format(h.getMean()))
+                .append(",\"p50_ns\":").append(h.getPercentile(0.5))
+                .append(",\"p99_ns\":").append(h.getPercentile(0.99))
+                .append(",\"max_ns\":").append(h.getMax())
+                .append('}');
+        }
+        Histogram interactions = snapshot.getInteractions();
+        line.append(",\"tree\":{")
+            .append("\"nodes\":").append(snapshot.getNodes())
+            .append(",\"max_depth\":").append(snapshot.getMaxDepth())
+            .append("},\"walk\":{")
+            .append("\"bodies\":").append(snapshot.getBodies())
+            .append(",\"direct_pairs\":").append(snapshot.getDirectPairs())
+            .append(",\"approximations\":").append(snapshot.getApproximations())
+            .append(",\"interactions_mean\":").append(format(interactions.getMean()))
+            .append(",\"interactions_p99\":").append(interactions.getPercentile(0.99))
+            .append(",\"interactions_max\":").append(interactions.getMax())
+            .append("}}");
+        this.writer.write(line.toString());
+        this.writer.newLine();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    // Writes the last incomplete interval and closes the file. Must not be called while afterStep runs
+    // Throws the first error if a line could not be written
+    @Override
+    public void close() throws IOException {
+        if (this.last > this.written) write(this.last);
+        this.writer.close();
+        if (this.error != null) throw this.error;
+    }
+}
@@ -21,8 +21,9 @@ public class Octree {
     private Octree[] children;              // Represents the subtrees. If null then this node is a leaf
     private CelestialBody body;             // The body represented in the node
     private int depth = 0;                  // Depth represents how deep this subtree is in the whole tree
-    private CelestialBody pseudoBody;       // The pseudobody represents the center mass and total mass of all children
-    private double theta = 1;               // Theta is used for the Barnes Hut Algorithm. 1 is a standard value
+    private double mass;                    // Total mass of all bodies in this subtree
+    private double massX, massY, massZ;     // Mass weighted sum of the positions of all bodies in this subtree
+    private double centerX, centerY, centerZ;   // Center of mass, see computeCenterMasses
 
     // Constructor
     public Octree(BoundingBox3D boundingBox) {
@@ -30,15 +31,26 @@ public class Octree {
     }
 
     // Inserts a body b into the correct node
+    // The mass and the position of the body are only summed up, so computeCenterMasses has to be called
+    // once after all bodies have been inserted
     public void insert(CelestialBody b) {
         // Node position is outside of the bounding box!
         if (!b.in(this.boundingBox)) {
             System.out.println("new node is not in bounds");
             return;
         }
+
+        // Every node on the way down contains the body
+        double m = b.getMass();
+        BodyStore store = b.getStore();
+        int i = b.getIndex();
+        this.mass += m;
+        this.massX += m * store.px[i];
+        this.massY += m * store.py[i];
+        this.massZ += m * store.pz[i];
+
         if (isLeaf()) {
             if (this.body == null) {
-                this.pseudoBody = b;
                 this.body = b;
                 return;
             } else {
@@ -51,9 +63,6 @@ public class Octree {
                 this.body = null;
                 this.children = new Octree[8];
 
-                // Set pseudo body
-                this.pseudoBody = b.pseudoBody(oldBody);
-
                 // Compute new bounding boxes for children
                 this.computeNewOctrees();
 
@@ -62,9 +71,6 @@ public class Octree {
                 this.children[b.octPositionIn(this.boundingBox)].insert(b);
             }
         } else {
-            // Set pseudo body
-            this.pseudoBody = b.pseudoBody(this.pseudoBody);
-
             // Since this is not a leaf, there are still subtrees
             // We need to insert the node at the correct octant position
             int pos = b.octPositionIn(this.boundingBox);
@@ -72,6 +78,18 @@ public class Octree {
         }
     }
 
+    // Calculates the center of mass of every node from the summed up positions, children first
+    public void computeCenterMasses() {
+        if (this.mass != 0) {
+            this.centerX = this.massX / this.mass;
+            this.centerY = this.massY / this.mass;
+            this.centerZ = this.massZ / this.mass;
+        }
+        if (this.children != null) {
+            for (Octree child : this.children) child.computeCenterMasses();
+        }
+    }
+
     // Calculates new octrees and therefore bounding boxes for each child
     // The bounding boxes always get smaller for increasing depth
     private void computeNewOctrees() {
@@ -94,31 +112,58 @@ public class Octree {
     // It approximates the force calculation based on the pseudo body, if the conditions are met
     // In the worst case, the algorithm goes to the leafs to calculate forces directly with the body
     public void updateForce(CelestialBody b) {
+        updateForce(b, null);
+    }
+
+    // Updates the force applied on the body b and counts the interactions in walk if it is not null, see Metrics
+    public void updateForce(CelestialBody b, Metrics.Walk walk) {
         if (this.isLeaf()) {
-            if (this.body !=b && this.body != null) b.calculateForce(this.body);
+            if (this.body !=b && this.body != null) {
+                b.calculateForce(this.body);
+                if (Metrics.ENABLED && walk != null) walk.direct++;
+            }
         }
-        else if ((b.distanceTo(this.pseudoBody) / this.boundingBox.getLength()) > this.theta) {
-            b.calculateForce(this.pseudoBody);
+        else if (b.distanceSquaredTo(this.centerX, this.centerY, this.centerZ) > Simulation.theta * Simulation.theta * this.boundingBox.getLength() * this.boundingBox.getLength()) {
+            b.calculateForce(this.centerX, this.centerY, this.centerZ, this.mass);
+            if (Metrics.ENABLED && walk != null) walk.approximated++;
         } else {
             if (!Simulation.enableZCoordinate) {
                 // Only check the front coordinates if z coordinates are not enabled
-                if (this.children[0] != null) this.children[0].updateForce(b);
-                if (this.children[2] != null) this.children[2].updateForce(b);
-                if (this.children[4] != null) this.children[4].updateForce(b);
-                if (this.children[6] != null) this.children[6].updateForce(b);
+                if (this.children[0] != null) this.children[0].updateForce(b, walk);
+                if (this.children[2] != null) this.children[2].updateForce(b, walk);
+                if (this.children[4] != null) this.children[4].updateForce(b, walk);
+                if (this.children[6] != null) this.children[6].updateForce(b, walk);
             } else {
-                if (this.children[0] != null) this.children[0].updateForce(b);
-                if (this.children[1] != null) this.children[1].updateForce(b);
-                if (this.children[2] != null) this.children[2].updateForce(b);
-                if (this.children[3] != null) this.children[3].updateForce(b);
-                if (this.children[4] != null) this.children[4].updateForce(b);
-                if (this.children[5] != null) this.children[5].updateForce(b);
-                if (this.children[6] != null) this.children[6].updateForce(b);
-                if (this.children[7] != null) this.children[7].updateForce(b);
+                if (this.children[0] != null) this.children[0].updateForce(b, walk);
+                if (this.children[1] != null) this.children[1].updateForce(b, walk);
+                if (this.children[2] != null) this.children[2].updateForce(b, walk);
+                if (this.children[3] != null) this.children[3].updateForce(b, walk);
+                if (this.children[4] != null) this.children[4].updateForce(b, walk);
+                if (this.children[5] != null) this.children[5].updateForce(b, walk);
+                if (this.children[6] != null) this.children[6].updateForce(b, walk);
+                if (this.children[7] != null) this.children[7].updateForce(b, walk);
             }
         }
     }
 
+    // Returns the number of nodes of this subtree
+    public int countNodes() {
+        int count = 1;
+        if (this.children != null) {
+            for (Octree child : this.children) count += child.countNodes();
+        }
+        return count;
+    }
+
+    // Returns the depth of the deepest node of this subtree
+    public int getMaxDepth() {
+        int max = this.depth;
+        if (this.children != null) {
+            for (Octree child : this.children) max = Math.max(max, child.getMaxDepth());
+        }
+        return max;
+    }
+
     // This function draws leaf quads in 2D, ignoring the Z-Coordinates
     public void drawLeafQuads() {
         if (isLeaf() && this.body != null) { this.boundingBox.draw(Color.green); }
@@ -163,7 +208,7 @@ public class Octree {
 
     // This function draws the center masses if the node is not a leaf in 2D, ignoring the Z-Coordinates
     public void drawCenterMasses() {
-        if (!isLeaf()) pseudoBody.drawWithDepthRatio(depth);
+        if (!isLeaf()) new Vector3(this.centerX, this.centerY, this.centerZ).drawAsDot(CelestialBody.avgBodyToUniverseRadius() * 10 / (depth + 1), Color.pink);
         if (children != null) {
             if (this.children[0] != null) this.children[0].drawCenterMasses();
             if (this.children[1] != null) this.children[1].drawCenterMasses();
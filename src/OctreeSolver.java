@@ -0,0 +1,87 @@
+// Gravity solver based on the Octree object graph, a new Octree is built for every calculation
+public class OctreeSolver implements GravitySolver {
+
+    private Octree octree;                  // The tree of the last calculation
+    private BodyStore store;                // The store the views belong to
+    private CelestialBody[] bodies;         // Views on the bodies of the store
+
+    @Override
+    public void computeForces(BodyStore bodies) {
+        build(bodies);
+
+        // The tree is only read, so the bodies can be processed in parallel
+        long start = Metrics.start();
+        Octree octree = this.octree;
+        CelestialBody[] views = this.bodies;
+        Parallel.forRange(0, views.length, (from, to) -> {
+            Metrics.Walk walk = Metrics.walk();
+            for (int i = from; i < to; i++) updateForce(octree, views[i], walk);
+            if (walk != null) walk.flush();
+        });
+        Metrics.stop(Metrics.Phase.Force, start);
+    }
+
+    @Override
+    public void computeForces(BodyStore bodies, int[] active, int count) {
+        build(bodies);
+
+        long start = Metrics.start();
+        Octree octree = this.octree;
+        CelestialBody[] views = this.bodies;
+        Parallel.forRange(0, count, (from, to) -> {
+            Metrics.Walk walk = Metrics.walk();
+            for (int k = from; k < to; k++) updateForce(octree, views[active[k]], walk);
+            if (walk != null) walk.flush();
+        });
+        Metrics.stop(Metrics.Phase.Force, start);
+    }
+
+    // Builds a new Octree from all bodies
+    private void build(BodyStore bodies) {
+        if (this.store != bodies || this.bodies.length != bodies.size()) {
+            this.store = bodies;
+            this.bodies = bodies.views();
+        }
+
+        // Create bounding box for the tree
+        long start = Metrics.start();
+        double radius = Simulation.RADIUS;
+        Vector3 upper = new Vector3(radius, radius, Simulation.enableZCoordinate ? radius : 0);
+        Vector3 lower = new Vector3(-radius, -radius, Simulation.enableZCoordinate ? -radius : 0);
+        BoundingBox3D boundingBox = new BoundingBox3D(upper, lower);
+
+        Octree octree = new Octree(boundingBox);
+        for (CelestialBody body : this.bodies) {
+            if (octree.inBoundingBox(body)) {
+                octree.insert(body);
+            }
+        }
+        octree.computeCenterMasses();
+        this.octree = octree;
+        Metrics.stop(Metrics.Phase.Build, start);
+        if (Metrics.ENABLED) Metrics.treeBuilt(octree.countNodes(), octree.getMaxDepth());
+    }
+
+    // Resets the force of the body and calculates it anew if it is inside the tree
+    private static void updateForce(Octree octree, CelestialBody body, Metrics.Walk walk) {
+        body.resetForces();
+        if (!octree.inBoundingBox(body)) return;
+        octree.updateForce(body, walk);
+        if (walk != null) walk.endBody();
+    }
+
+    @Override
+    public void drawLeafQuads() {
+        if (this.octree != null) this.octree.drawLeafQuads();
+    }
+
+    @Override
+    public void drawCompleteQuads() {
+        if (this.octree != null) this.octree.drawCompleteQuads();
+    }
+
+    @Override
+    public void drawCenterMasses() {
+        if (this.octree != null) this.octree.drawCenterMasses();
+    }
+}
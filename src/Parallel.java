@@ -0,0 +1,64 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+    Helper for processing index ranges on all cores.
+    A range is split in halves until the pieces are at most 'grain' indices long,
+    the pieces are then processed by the tasks of the common ForkJoin pool.
+    The number of threads can be set with -Djava.util.concurrent.ForkJoinPool.common.parallelism=n
+ */
+public class Parallel {
+
+    // Default number of indices processed by one task
+    public static final int GRAIN = 256;
+
+    // Set to false to process everything on the calling thread, e.g. for measurements
+    public static boolean enabled = true;
+
+    // The work done for one piece of a range
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+
+    // Processes the range [from, to) in pieces of the default size
+    public static void forRange(int from, int to, RangeBody body) {
+        forRange(from, to, GRAIN, body);
+    }
+
+    // Processes the range [from, to) in pieces of at most grain indices
+    // Returns when all pieces are done
+    public static void forRange(int from, int to, int grain, RangeBody body) {
+        if (!enabled || to - from <= grain || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            if (from < to) body.run(from, to);
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new RangeAction(from, to, grain, body));
+    }
+
+    // Splits the range recursively
+    private static class RangeAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to, grain;
+        private final RangeBody body;
+
+        RangeAction(int from, int to, int grain, RangeBody body) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.grain) {
+                this.body.run(this.from, this.to);
+                return;
+            }
+            int mid = (this.from + this.to) >>> 1;
+            invokeAll(new RangeAction(this.from, mid, this.grain, this.body),
+                      new RangeAction(mid, this.to, this.grain, this.body));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+    Runs the physics of the interactive simulation on its own thread.
+    After every step the positions are published into a FrameRing, so the renderer never stalls the
+    integration and can draw the latest state at its own rate.
+
+    The solver is locked while the bodies are moved, the renderer locks it as well to draw the
+    overlays (quads, center masses) of a complete tree.
+ */
+public class PhysicsThread extends Thread {
+
+    private final BodyStore store;
+    private final GravitySolver solver;
+    private final Integrator integrator;
+    private final FrameRing frames;
+    private final StepListener[] listeners;         // e.g. checkpoints, called after every step
+    private final TimestepController timesteps = Simulation.createTimestepController();
+
+    private volatile boolean running = true;
+    private volatile boolean paused = false;
+    private long step;
+
+    // Constructor, step is the number of steps already done, e.g. by a resumed simulation
+    public PhysicsThread(BodyStore store, GravitySolver solver, Integrator integrator, FrameRing frames, long step,
+                         StepListener... listeners) {
+        super("physics");
+        this.store = store;
+        this.solver = solver;
+        this.integrator = integrator;
+        this.frames = frames;
+        this.listeners = listeners;
+        this.step = step;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        // The initial state is shown before the first step
+        this.frames.publish(this.store, this.step);
+
+        while (this.running) {
+            if (this.paused) {
+                synchronized (this) {
+                    while (this.paused && this.running) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                continue;
+            }
+
+            // The integrator calculates the forces, so the tree is locked for the whole step
+            double dt = Simulation.dt;
+            synchronized (this.solver) {
+                this.integrator.step(this.store, this.solver, dt);
+            }
+            if (Simulation.adaptiveDt) Simulation.dt = this.timesteps.next(this.store, dt, Simulation.dtAccuracy);
+            this.step++;
+            this.frames.publish(this.store, this.step);
+            for (StepListener listener : this.listeners) listener.afterStep(this.store, this.step);
+        }
+    }
+
+    // Pauses or resumes the simulation
+    public synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+        notifyAll();
+    }
+
+    public boolean isPaused() {
+        return this.paused;
+    }
+
+    // Stops the thread after the current step and waits for it
+    public void shutdown() {
+        synchronized (this) {
+            this.running = false;
+            notifyAll();
+        }
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
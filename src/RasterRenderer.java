@@ -0,0 +1,62 @@
+/*
+    Draws all bodies as points by writing their colors straight into the pixels of the StdDraw offscreen buffer.
+    StdDraw.point does a coordinate transformation, a pen color change and a Graphics2D fill per body,
+    here every body costs two multiplications and four array writes.
+
+    A point covers 2 x 2 pixels of the offscreen buffer (it has twice the canvas resolution),
+    which is about the size of a StdDraw point with the default pen radius.
+    The pixels are written in body order, so later bodies are drawn on top like with StdDraw.
+
+    With Parallel.enabled the buffer is split into horizontal bands, every band is drawn by its own task.
+    Each task reads all bodies but only writes the rows of its band, so no pixel is written by two tasks.
+ */
+public class RasterRenderer {
+
+    // Bands are at least this many rows high, so small canvases are drawn on one thread
+    private static final int MIN_BAND_HEIGHT = 64;
+
+    // Draws all bodies of the store as points into the offscreen buffer. Shown with the next StdDraw.show()
+    public static void drawAsPoints(BodyStore bodies) {
+        int[] pixels = StdDraw.getOffscreenPixels();
+        int width = StdDraw.getOffscreenWidth();
+        int height = StdDraw.getOffscreenHeight();
+
+        // The offscreen coordinates are a linear function of the user coordinates: x * scale + offset
+        double offsetX = StdDraw.toOffscreenX(0), scaleX = StdDraw.toOffscreenX(1) - offsetX;
+        double offsetY = StdDraw.toOffscreenY(0), scaleY = StdDraw.toOffscreenY(1) - offsetY;
+
+        int bands = Parallel.enabled ? Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), height / MIN_BAND_HEIGHT)) : 1;
+        if (bands == 1) {
+            drawBand(bodies, pixels, width, 0, height, scaleX, offsetX, scaleY, offsetY);
+            return;
+        }
+        int bandHeight = (height + bands - 1) / bands;
+        Parallel.forRange(0, bands, 1, (from, to) -> {
+            for (int band = from; band < to; band++) {
+                int top = band * bandHeight;
+                drawBand(bodies, pixels, width, top, Math.min(height, top + bandHeight), scaleX, offsetX, scaleY, offsetY);
+            }
+        });
+    }
+
+    // Draws the pixels of all points which lie in the rows [top, bottom)
+    private static void drawBand(BodyStore bodies, int[] pixels, int width, int top, int bottom,
+                                 double scaleX, double offsetX, double scaleY, double offsetY) {
+        double[] px = bodies.px, py = bodies.py;
+        int n = bodies.size();
+        for (int i = 0; i < n; i++) {
+            // The point is centered on the pixel corner closest to the position
+            int y = (int) Math.floor(py[i] * scaleY + offsetY + 0.5) - 1;
+            if (y + 1 < top || y >= bottom) continue;
+            int x = (int) Math.floor(px[i] * scaleX + offsetX + 0.5) - 1;
+            if (x + 1 < 0 || x >= width) continue;
+
+            int argb = bodies.color[i].getRGB();
+            for (int row = Math.max(y, top); row <= y + 1 && row < bottom; row++) {
+                int index = row * width;
+                if (x >= 0) pixels[index + x] = argb;
+                if (x + 1 < width) pixels[index + x + 1] = argb;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+    The ForceKernel without the Vector API, one interaction after another
+ */
+public class ScalarKernel implements ForceKernel {
+
+    @Override
+    public void pointMasses(double[] x, double[] y, double[] z, double[] m, int from, int to,
+                            double px, double py, double pz, double[] out, int offset) {
+        double fx = 0, fy = 0, fz = 0;
+        for (int k = from; k < to; k++) {
+            double dx = x[k] - px;
+            double dy = y[k] - py;
+            double dz = z[k] - pz;
+            double r2 = dx * dx + dy * dy + dz * dz;
+            if (r2 == 0) continue;
+            double inv = 1 / Math.sqrt(r2);
+            double f = m[k] * inv * inv * inv;
+            fx += f * dx;
+            fy += f * dy;
+            fz += f * dz;
+        }
+        out[offset] += fx;
+        out[offset + 1] += fy;
+        out[offset + 2] += fz;
+    }
+
+    @Override
+    public void quadrupoles(InteractionList list, int from, int to, double px, double py, double pz, double[] out, int offset) {
+        double fx = 0, fy = 0, fz = 0;
+        for (int k = from; k < to; k++) {
+            double dx = list.qx[k] - px;
+            double dy = list.qy[k] - py;
+            double dz = list.qz[k] - pz;
+            double inv = 1 / Math.sqrt(dx * dx + dy * dy + dz * dz);
+            double inv3 = inv * inv * inv;
+            double f = list.qm[k] * inv3;
+            // d = -r, so Q r = -Q d and r^T Q r = d^T Q d
+            double qx = list.qxx[k] * dx + list.qxy[k] * dy + list.qxz[k] * dz;
+            double qy = list.qxy[k] * dx + list.qyy[k] * dy + list.qyz[k] * dz;
+            double qz = list.qxz[k] * dx + list.qyz[k] * dy + list.qzz[k] * dz;
+            double inv5 = inv3 * inv * inv;
+            double g = 2.5 * (dx * qx + dy * qy + dz * qz) * inv5 * inv * inv;
+            fx += f * dx + g * dx - qx * inv5;
+            fy += f * dy + g * dy - qy * inv5;
+            fz += f * dz + g * dz - qz * inv5;
+        }
+        out[offset] += fx;
+        out[offset + 1] += fy;
+        out[offset + 2] += fz;
+    }
+}
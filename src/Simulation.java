@@ -1,5 +1,5 @@
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Scanner;
 
@@ -18,16 +18,100 @@ public class Simulation {
     public static double RADIUS = 2.83800E06;
 
     // Increase this to accelerate simulation speed
-    public static double dt = 0.1;
+    // Volatile because it is changed by the renderer while the physics thread runs
+    public static volatile double dt = 0.1;
+
+    // Chooses dt after every step from the accelerations of the bodies instead, see TimestepController.
+    // dt is kept within [minDt, maxDt], a larger accuracy value gives larger steps. The softening is a length in the
+    // units of the bodies, 0 uses the mean distance between the bodies. The fraction dtOutliers of the bodies
+    // with the smallest steps does not limit dt
+    public static volatile boolean adaptiveDt = false;
+    public static volatile double dtAccuracy = 0.25;
+    public static double dtSoftening = 0;
+    public static double dtOutliers = 0.001;
+    public static double minDt = 1e-4;
+    public static double maxDt = 10;
+
+    // How the bodies are moved by every step, see Integrator
+    public static IntegrationMethod integrationMethod = IntegrationMethod.Leapfrog;
+
+    // Block time steps: dt is divided into at most 2^(blockTimestepBins - 1) steps for the bodies with the largest
+    // accelerations. Smaller accuracy values give smaller steps, see BlockTimestepIntegrator
+    public static int blockTimestepBins = 8;
+    public static double blockTimestepAccuracy = 0.1;
+
+    // Number of frame buffers between the physics thread and the renderer, see FrameRing
+    public static int frameBuffers = FrameRing.MIN_FRAMES;
+
+    // Minimum time between two displayed frames in milliseconds
+    public static int frameTime = 16;
+
+    // Draws the points directly into the pixels of the canvas instead of a StdDraw.point per body, see RasterRenderer
+    public static boolean rasterPoints = true;
 
     // Default is false so we can optimise the drawing of the quads/octants
     // by reducing the number of possible trees to check
     public static boolean enableZCoordinate = false;
 
+    // Uses the array backed FlatOctree (or the FlatQuadtree for planar inputs)
+    // instead of building a new Octree object graph every step
+    public static boolean useFlatOctree = true;
+
+    // How the FlatOctree is built for every step, see BuildMode
+    public static BuildMode buildMode = BuildMode.Parallel;
+
+    // Keeps the flat tree across steps and only moves the bodies that left their leaf, see FlatTree.refit.
+    // The tree is built anew with buildMode when its nodes per body have grown by refitRebuildFactor since
+    // the last full build, i.e. when many nodes have lost their bodies, or when more than refitMaxMoved of the bodies
+    // have left their leaf in one step
+    public static boolean refitTree = false;
+    public static double refitRebuildFactor = 1.25;
+    public static double refitMaxMoved = 0.25;
+
+    // Theta is used for the Barnes Hut Algorithm: a node is approximated by its center of mass if
+    // distance / node length > theta. Smaller values are faster but less accurate. 1 is a standard value
+    public static double theta = 1;
+
+    // Adds the quadrupole moments of the nodes to the approximation of the flat trees,
+    // which allows a smaller theta (i.e. fewer opened nodes) for the same accuracy
+    public static boolean useQuadrupole = false;
+
+    // Walks the flat trees once per group of up to 64 nearby bodies instead of once per body. The group shares
+    // one interaction list built for its bounding box, which is at least as accurate as the walks of its bodies
+    public static boolean groupedWalk = false;
+
+    // Calculates the forces with the fast multipole method on the FlatOctree instead of a Barnes Hut walk per body,
+    // see FmmSolver. Nodes are approximated if distance > theta * (radius of the source + radius of the target)
+    public static boolean useFmm = false;
+
+    // Directory of the checkpoints, see Checkpoint
+    public static File checkpointDirectory = new File("./checkpoints");
+
+    // Writes a checkpoint every n steps in the background, 0 disables the checkpoints
+    public static int checkpointInterval = 0;
+
+    // Writes the positions into this file after every trajectoryStepStride-th step, null disables it.
+    // Only every trajectoryBodyStride-th body is written, see TrajectoryWriter
+    public static File trajectoryFile = null;
+    public static int trajectoryStepStride = 1;
+    public static int trajectoryBodyStride = 1;
+    public static Backpressure trajectoryBackpressure = Backpressure.Block;
+
+    // Writes the timers and counters of the last metricsInterval steps into this file, null disables it.
+    // The metrics have to be enabled with -Dnbody.metrics=true, see Metrics and MetricsLog
+    public static File metricsFile = null;
+    public static int metricsInterval = 100;
+
     // Restarts the simulation if set to true
     private static boolean restartSimulation = true;
 
     public static void main(String[] args) {
+        // With arguments the simulation runs without a window, see Headless
+        if (args.length > 0) {
+            Headless.main(args);
+            return;
+        }
+
         while (true) {
             if (restartSimulation) {
                 restartSimulation = false;
@@ -42,10 +126,13 @@ public class Simulation {
         Scanner sc = new Scanner(System.in);
 
         int choice = 0;
+        long step = 0;
+        boolean canResume = Checkpoint.exists(checkpointDirectory);
 
-        while (choice != 1 && choice != 2) {
+        while (choice != 1 && choice != 2 && choice != 3) {
             System.out.println("Press 1: Read galaxy from files ");
             System.out.println("Press 2: Generate random bodies ");
+            if (canResume) System.out.println("Press 3: Resume from the latest checkpoint ");
             System.out.print("Choice: ");
             choice = sc.nextInt();
 
@@ -71,93 +158,108 @@ public class Simulation {
                 int sampleChoice = sc.nextInt();
                 try {
                     bodies = CelestialBody.readGalaxy(files[sampleChoice]);
-                } catch (FileNotFoundException e) {
-                    System.out.println("File not found: " + e);
+                } catch (IOException e) {
+                    System.out.println("Could not read the galaxy: " + e.getMessage());
                 }
             } else if (choice == 2) {
                 System.out.print("Enter number of bodies to be generated: ");
-                int numberOfBodies = sc.nextInt();
-
-                // k is the number of clusters. Clusters are within 3 and ln(numberOfBodies) to avoid too many clusters
-                int k = (int) Helper.getRandomNumberInRange(3, Math.log(numberOfBodies));
-
-                ArrayList<CelestialBody> arrList = new ArrayList<>();
-                // Generates k - 1 random clusters of bodies with n/k bodies inside each cluster
-                // The last portion is filled with random celestial bodies: see below
-                for (int i = 1; i < k; i++) {
-                    double positionOfClusterX = Helper.getRandomNumberInRange(-RADIUS, RADIUS);
-                    double positionOfClusterY = Helper.getRandomNumberInRange(-RADIUS, RADIUS);
-                    Vector3 clusterPosition = new Vector3(positionOfClusterX, positionOfClusterY, 0);
-                    int numberOfBodiesInCluster = numberOfBodies / k;
-                    double randomRadius = Helper.getRandomNumberInRange(RADIUS / 9, RADIUS / 5);
-                    CelestialBody.generateRandomCluster(clusterPosition, numberOfBodiesInCluster, randomRadius, arrList);
+                bodies = generateBodies(sc.nextInt());
+            } else if (choice == 3 && canResume) {
+                try {
+                    Checkpoint checkpoint = Checkpoint.read(checkpointDirectory);
+                    checkpoint.restore();
+                    bodies = checkpoint.getBodies().views();
+                    step = checkpoint.getStep();
+                } catch (IOException e) {
+                    System.out.println("Could not read the checkpoint: " + e.getMessage());
+                    choice = 0;
                 }
-
-                // Generates random bodies throughout the map for the last portion of the array
-                CelestialBody.generateRandom(numberOfBodies / k, RADIUS, arrList);
-
-                // Convert the ArrayList to an Array
-                bodies = arrList.toArray(bodies);
             } else {
                 bodies = new CelestialBody[0];
+                choice = 0;
             }
         }
 
+        // The bodies are views on the store, the simulation works on the store directly
+        BodyStore store = BodyStore.gather(bodies);
+
         // Setup the canvas/window including scaling
         setupWindow();
 
-        // Create bounding box for the tree
-        Vector3 upper = new Vector3(RADIUS, RADIUS, enableZCoordinate ? RADIUS : 0);
-        Vector3 lower = new Vector3(-RADIUS, -RADIUS, enableZCoordinate ? -RADIUS : 0);
-        BoundingBox3D boundingBox = new BoundingBox3D(upper, lower);
-
         boolean showCompleteQuads = false,
                 showLeafQuads = false,
                 showCenterMasses = false,
-                drawAsPoint = true,
-                pause = false;
+                drawAsPoint = true;
+
+        // The solver and the integrator are reused for every step
+        GravitySolver solver = createSolver(store);
+        Integrator integrator = createIntegrator();
+
+        // The physics runs on its own thread and publishes a frame after every step,
+        // this thread only draws the latest frame and handles the keys
+        FrameRing frames = new FrameRing(frameBuffers, store.size());
+        // Checkpoints and trajectories are written by their own threads as well
+        ArrayList<StepListener> listeners = new ArrayList<>();
+        CheckpointWriter checkpoints = checkpointInterval > 0 ? new CheckpointWriter(checkpointDirectory, checkpointInterval, store.size()) : null;
+        if (checkpoints != null) listeners.add(checkpoints);
+        TrajectoryWriter trajectory = null;
+        try {
+            trajectory = createTrajectoryWriter(store);
+            if (trajectory != null) listeners.add(trajectory);
+        } catch (IOException e) {
+            System.out.println("Could not open the trajectory file: " + e.getMessage());
+        }
+        MetricsLog metrics = null;
+        try {
+            metrics = createMetricsLog();
+            if (metrics != null) listeners.add(metrics);
+        } catch (IOException e) {
+            System.out.println("Could not open the metrics file: " + e.getMessage());
+        }
+        PhysicsThread physics = new PhysicsThread(store, solver, integrator, frames, step, listeners.toArray(new StepListener[0]));
+        physics.start();
 
+        long lastStep = -1;
         while(true) {
-            if (pause) {
-                if (StdDraw.hasNextKeyTyped()) {
-                    char key = StdDraw.nextKeyTyped();
-                    if (key == 'p') pause = false;
-                }
-                continue;
-            }
-
-            Octree octree = new Octree(boundingBox);
-            for (CelestialBody body : bodies) {
-                if (octree.inBoundingBox(body)) {
-                    octree.insert(body);
-                }
+            long frameStart = System.currentTimeMillis();
+
+            FrameRing.Frame frame;
+            try {
+                frame = frames.take(lastStep, frameTime);
+            } catch (InterruptedException e) {
+                stopSimulation(physics, checkpoints, trajectory, metrics);
+                return;
             }
 
-            for (int i = 0; i < bodies.length; i++) {
-                bodies[i].resetForces();
-                if (bodies[i].in(boundingBox)) {
-                    octree.updateForce(bodies[i]);
-                    bodies[i].update(dt);
+            // Without a new frame (e.g. paused) the last one stays on the screen
+            if (frame != null) {
+                long start = Metrics.start();
+                lastStep = frame.getStep();
+                StdDraw.clear(StdDraw.BLACK);
+
+                // To efficiently draw the quads, make sure enableZCoordinates is set to false!
+                // It reduces the number of trees being checked
+                // The tree may already be a few steps newer than the frame
+                synchronized (solver) {
+                    if (showCompleteQuads) solver.drawCompleteQuads();
+                    if (showLeafQuads) solver.drawLeafQuads();
+                    if (showCenterMasses) solver.drawCenterMasses();
                 }
-            }
-
-            StdDraw.clear(StdDraw.BLACK);
 
-            // To efficiently draw the quads, make sure enableZCoordinates is set to false!
-            // It reduces the number of trees being checked
-            if (showCompleteQuads) octree.drawCompleteQuads();
-            if (showLeafQuads) octree.drawLeafQuads();
-            if (showCenterMasses) octree.drawCenterMasses();
-
-            for (int i = 0; i < bodies.length; i++) {
-                if (drawAsPoint) {
-                    bodies[i].drawAsPoint();
+                if (drawAsPoint && rasterPoints) {
+                    RasterRenderer.drawAsPoints(frame.getBodies());
+                } else if (drawAsPoint) {
+                    frame.getBodies().drawAsPoints();
                 } else {
-                    bodies[i].drawWithRadius();
+                    frame.getBodies().drawWithRadius();
                 }
-            }
+                frames.release();
+                Metrics.stop(Metrics.Phase.Render, start);
 
-            StdDraw.show();
+                start = Metrics.start();
+                StdDraw.show();
+                Metrics.stop(Metrics.Phase.Show, start);
+            }
 
             if (StdDraw.hasNextKeyTyped()) {
                 char key = StdDraw.nextKeyTyped();
@@ -165,15 +267,131 @@ public class Simulation {
                 if (key == 'l') showLeafQuads = !showLeafQuads;
                 if (key == 'm') showCenterMasses = !showCenterMasses;
                 if (key == 'f') drawAsPoint = !drawAsPoint;
-                if (key == 'r') { restartSimulation = true; dt = 0.1; break; }
-                if (key == 'p') pause = true;
-                if (key == '+') dt += 0.1;
-                if (key == '-') dt -= 0.1;
-                if (key == 'q') System.exit(0);
+                if (key == 'r') {
+                    stopSimulation(physics, checkpoints, trajectory, metrics);
+                    restartSimulation = true;
+                    dt = 0.1;
+                    break;
+                }
+                if (key == 'p') physics.setPaused(!physics.isPaused());
+                if (key == 'a') adaptiveDt = !adaptiveDt;
+                if (key == '+') changeDt(true);
+                if (key == '-') changeDt(false);
+                if (key == 'q') {
+                    stopSimulation(physics, checkpoints, trajectory, metrics);
+                    System.exit(0);
+                }
+
+                // Draws the last frame again with the new settings, e.g. while paused
+                lastStep = -1;
             }
+
+            // Limits the display rate, the physics thread keeps running in the meantime
+            long remaining = frameTime - (System.currentTimeMillis() - frameStart);
+            if (remaining > 0) StdDraw.pause((int) remaining);
         }
     }
 
+    // Accelerates or decelerates the simulation. With an adaptive dt the accuracy is changed instead
+    // dt changes by 0.1, below 0.1 it is halved or doubled, so it never reaches 0
+    private static void changeDt(boolean faster) {
+        if (adaptiveDt) {
+            dtAccuracy = faster ? dtAccuracy * 1.25 : dtAccuracy / 1.25;
+            return;
+        }
+        double value = dt;
+        if (faster) value = value < 0.1 ? value * 2 : value + 0.1;
+        else value = value <= 0.1 ? value / 2 : value - 0.1;
+        dt = Math.max(minDt, Math.min(maxDt, value));
+    }
+
+    // Stops the physics thread and writes the remaining checkpoints, trajectory frames and metrics
+    private static void stopSimulation(PhysicsThread physics, CheckpointWriter checkpoints, TrajectoryWriter trajectory,
+                                       MetricsLog metrics) {
+        physics.shutdown();
+        if (checkpoints != null) checkpoints.close();
+        if (trajectory != null) {
+            try {
+                trajectory.close();
+            } catch (IOException e) {
+                System.out.println("Could not write the trajectory: " + e.getMessage());
+            }
+        }
+        if (metrics != null) {
+            try {
+                metrics.close();
+            } catch (IOException e) {
+                System.out.println("Could not write the metrics: " + e.getMessage());
+            }
+        }
+    }
+
+    // Returns a writer for the trajectory of the bodies, or null if no trajectory is written
+    public static TrajectoryWriter createTrajectoryWriter(BodyStore bodies) throws IOException {
+        if (trajectoryFile == null) return null;
+        return new TrajectoryWriter(trajectoryFile, bodies.size(), trajectoryStepStride, trajectoryBodyStride,
+                TrajectoryWriter.DEFAULT_POOL_SIZE, trajectoryBackpressure);
+    }
+
+    // Returns a log for the metrics, or null if no metrics file is set or the metrics are disabled
+    public static MetricsLog createMetricsLog() throws IOException {
+        if (metricsFile == null) return null;
+        if (!Metrics.ENABLED) {
+            System.out.println("The metrics are disabled, start with -Dnbody.metrics=true to write " + metricsFile);
+            return null;
+        }
+        return new MetricsLog(metricsFile, metricsInterval);
+    }
+
+    // Generates random clusters of bodies with a total of about n bodies
+    public static CelestialBody[] generateBodies(int numberOfBodies) {
+        // k is the number of clusters. Clusters are within 3 and ln(numberOfBodies) to avoid too many clusters
+        int k = (int) Helper.getRandomNumberInRange(3, Math.log(numberOfBodies));
+
+        ArrayList<CelestialBody> arrList = new ArrayList<>();
+        // Generates k - 1 random clusters of bodies with n/k bodies inside each cluster
+        // The last portion is filled with random celestial bodies: see below
+        for (int i = 1; i < k; i++) {
+            double positionOfClusterX = Helper.getRandomNumberInRange(-RADIUS, RADIUS);
+            double positionOfClusterY = Helper.getRandomNumberInRange(-RADIUS, RADIUS);
+            Vector3 clusterPosition = new Vector3(positionOfClusterX, positionOfClusterY, 0);
+            int numberOfBodiesInCluster = numberOfBodies / k;
+            double randomRadius = Helper.getRandomNumberInRange(RADIUS / 9, RADIUS / 5);
+            CelestialBody.generateRandomCluster(clusterPosition, numberOfBodiesInCluster, randomRadius, arrList);
+        }
+
+        // Generates random bodies throughout the map for the last portion of the array
+        CelestialBody.generateRandom(numberOfBodies / k, RADIUS, arrList);
+
+        // Convert the ArrayList to an Array
+        return arrList.toArray(new CelestialBody[0]);
+    }
+
+    // Creates the gravity solver for the bodies. Planar inputs get the quadtree, which only needs
+    // 4 children per node and no z arithmetic
+    public static GravitySolver createSolver(BodyStore bodies) {
+        if (!useFlatOctree) return new OctreeSolver();
+        if (useFmm) return new FmmSolver();
+        if (!enableZCoordinate || bodies.isPlanar()) return new FlatQuadtree();
+        return new FlatOctree();
+    }
+
+    // Creates the integrator of the selected integration method
+    public static Integrator createIntegrator() {
+        switch (integrationMethod) {
+            case Euler:          return new EulerIntegrator();
+            case VelocityVerlet: return new VelocityVerletIntegrator();
+            case Yoshida4:       return new YoshidaIntegrator();
+            case BlockLeapfrog:  return new BlockTimestepIntegrator(blockTimestepBins, blockTimestepAccuracy);
+            default:             return new LeapfrogIntegrator();
+        }
+    }
+
+    // Creates the controller of the adaptive dt with the bounds minDt and maxDt
+    public static TimestepController createTimestepController() {
+        return new TimestepController(minDt, maxDt);
+    }
+
     // Sets up the window and canvas scaling
     private static void setupWindow() {
         StdDraw.setCanvasSize(WINDOWSIZE, WINDOWSIZE);
@@ -53,6 +53,7 @@ import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.WritableRaster;
 
@@ -1728,6 +1729,63 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         if (!defer) show();
     }
 
+
+    /***************************************************************************
+     *  Direct access to the pixels of the offscreen buffer.
+     ***************************************************************************/
+
+    /**
+     * Returns the packed ARGB pixels of the offscreen buffer, row by row.
+     * The buffer is twice as large as the canvas in each direction,
+     * see {@link #getOffscreenWidth()} and {@link #getOffscreenHeight()}.
+     * Pixels written into the array become visible with the next call of {@link #show()},
+     * so this should only be used with double buffering enabled.
+     * The array changes when the canvas size is changed.
+     *
+     * @return the pixels of the offscreen buffer
+     */
+    public static int[] getOffscreenPixels() {
+        return ((DataBufferInt) offscreenImage.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Returns the width of the offscreen buffer in pixels.
+     *
+     * @return the width of the offscreen buffer
+     */
+    public static int getOffscreenWidth() {
+        return offscreenImage.getWidth();
+    }
+
+    /**
+     * Returns the height of the offscreen buffer in pixels.
+     *
+     * @return the height of the offscreen buffer
+     */
+    public static int getOffscreenHeight() {
+        return offscreenImage.getHeight();
+    }
+
+    /**
+     * Returns the column of the offscreen buffer for the <em>x</em>-coordinate.
+     *
+     * @param  x the <em>x</em>-coordinate in user coordinates
+     * @return the column, not rounded and not clipped
+     */
+    public static double toOffscreenX(double x) {
+        return 2 * scaleX(x);
+    }
+
+    /**
+     * Returns the row of the offscreen buffer for the <em>y</em>-coordinate.
+     *
+     * @param  y the <em>y</em>-coordinate in user coordinates
+     * @return the row, not rounded and not clipped
+     */
+    public static double toOffscreenY(double y) {
+        return 2 * scaleY(y);
+    }
+
     /**
      * Enables double buffering. All subsequent calls to 
      * drawing methods such as {@code line()}, {@code circle()},
@@ -0,0 +1,6 @@
+// Is called by the simulation after every step, e.g. to write checkpoints or trajectories
+public interface StepListener {
+
+    // Called after the bodies were moved by step 'step'. The bodies must not be changed
+    void afterStep(BodyStore bodies, long step);
+}
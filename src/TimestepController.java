@@ -0,0 +1,107 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+    Chooses the global time step after every step with the acceleration criterion of Aarseth: every body asks for
+
+    dt_i = accuracy * sqrt(softening / |a_i|)
+
+    i.e. the time in which its acceleration alone moves it by the softening length. The softening is
+    Simulation.dtSoftening, or the mean distance between the bodies if that is 0. It does not depend on the
+    velocities, so a system moving as a whole gets the same steps as one at rest.
+
+    The step is the smallest dt_i after the fraction Simulation.dtOutliers of the bodies with the smallest steps
+    has been left out. These are the few bodies in close encounters, which a global step can not resolve anyway
+    (see BlockTimestepIntegrator) and which would otherwise slow down the whole simulation.
+    The step can grow by at most a factor of 2 per step and is kept within [min, max]. A step clamped at min
+    is reported once, until the step is free again. A larger accuracy value gives larger steps.
+ */
+public class TimestepController {
+
+    private final double min;
+    private final double max;
+
+    private double[] accelerations = new double[0];     // Squared accelerations of the bodies in the universe
+    private double minX, minY, minZ, maxX, maxY, maxZ;  // Bounding box of the bodies in the universe
+    private long clampedSteps;                          // Number of steps clamped at min
+    private boolean clamped;                            // True if the last step was clamped at min
+
+    // Constructor, the steps are kept within [min, max]
+    public TimestepController(double min, double max) {
+        if (!(min > 0) || !(max >= min)) throw new IllegalArgumentException("The bounds of dt must satisfy 0 < min <= max");
+        this.min = min;
+        this.max = max;
+    }
+
+    // Returns the time step for the next step of the bodies. The accelerations must belong to the current positions,
+    // which is the case after every step of an Integrator. previous is the time step of the last step
+    public double next(BodyStore bodies, double previous, double accuracy) {
+        int count = collect(bodies);
+        double dt = this.max;
+        if (count > 0) {
+            // The largest acceleration after the outliers gives the smallest step
+            int k = Math.min(count - 1, (int) (Simulation.dtOutliers * count));
+            Arrays.sort(this.accelerations, 0, count);
+            double a = Math.sqrt(this.accelerations[count - 1 - k]);
+            double softening = softening(count);
+            if (a > 0 && softening > 0) dt = Math.min(dt, accuracy * Math.sqrt(softening / a));
+        }
+        if (previous > 0) dt = Math.min(dt, 2 * previous);
+
+        boolean clamped = dt < this.min;
+        if (clamped) {
+            this.clampedSteps++;
+            if (!this.clamped) {
+                System.err.println(String.format(Locale.ROOT, "The adaptive dt %.3g is below its minimum, the steps are clamped at %.3g",
+                        dt, this.min));
+            }
+        }
+        this.clamped = clamped;
+        return clamp(dt);
+    }
+
+    // Stores the squared accelerations of the bodies in the universe at the front of the array and their
+    // bounding box, returns their number
+    private int collect(BodyStore bodies) {
+        int n = bodies.size();
+        if (this.accelerations.length < n) this.accelerations = new double[n];
+        this.minX = this.minY = this.minZ = Double.POSITIVE_INFINITY;
+        this.maxX = this.maxY = this.maxZ = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!bodies.inUniverse(i)) continue;
+            this.accelerations[count++] = bodies.ax[i] * bodies.ax[i] + bodies.ay[i] * bodies.ay[i] + bodies.az[i] * bodies.az[i];
+            this.minX = Math.min(this.minX, bodies.px[i]);
+            this.minY = Math.min(this.minY, bodies.py[i]);
+            this.minZ = Math.min(this.minZ, bodies.pz[i]);
+            this.maxX = Math.max(this.maxX, bodies.px[i]);
+            this.maxY = Math.max(this.maxY, bodies.py[i]);
+            this.maxZ = Math.max(this.maxZ, bodies.pz[i]);
+        }
+        return count;
+    }
+
+    // Returns Simulation.dtSoftening, or the mean distance between the count bodies in their bounding box.
+    // Only the directions in which the bodies are spread count, e.g. a flat galaxy in 3D is treated as 2D
+    private double softening(int count) {
+        if (Simulation.dtSoftening > 0) return Simulation.dtSoftening;
+        double size = 1;
+        int dimensions = 0;
+        for (double extent : new double[]{this.maxX - this.minX, this.maxY - this.minY, this.maxZ - this.minZ}) {
+            if (extent <= 0) continue;
+            size *= extent;
+            dimensions++;
+        }
+        return dimensions == 0 ? 0 : Math.pow(size / count, 1.0 / dimensions);
+    }
+
+    // Returns the number of steps that were clamped at min
+    public long getClampedSteps() {
+        return this.clampedSteps;
+    }
+
+    // Returns dt within the bounds
+    public double clamp(double dt) {
+        return Math.max(this.min, Math.min(this.max, dt));
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/*
+    Writes the positions of the bodies after every k-th step into a trajectory file.
+
+    The simulation copies the positions into pooled buffers, a background thread writes the full buffers
+    to the file. A buffer holds as many frames as fit into about 4 MiB, so the file is written in large
+    sequential pieces. If all pooled buffers are waiting to be written, the Backpressure decides what happens.
+    The positions can be decimated: only every k-th step and every m-th body is written.
+
+    The file is little-endian with a header of 32 bytes:
+
+    offset  size    content
+    0       4       magic "NBTR"
+    4       4       version, currently 1
+    8       4       flags, bit 0: the frames have z coordinates
+    12      4       number of bodies per frame
+    16      4       step stride k
+    20      4       body stride m
+    24      8       reserved, 0
+
+    followed by the frames: the step (long) and the positions x, y, [z] (doubles) of the bodies 0, m, 2m, ...
+ */
+public class TrajectoryWriter implements StepListener, AutoCloseable {
+
+    public static final int VERSION = 1;
+    public static final int FLAG_3D = 1;
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    private static final int MAGIC = 'N' | 'B' << 8 | 'T' << 16 | 'R' << 24;
+    private static final int HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    private final FileChannel channel;
+    private final int stepStride;
+    private final int bodyStride;
+    private final int bodies;           // Number of bodies per frame
+    private final boolean is3D;
+    private final int frameSize;        // Bytes per frame
+    private final int bufferSize;       // Bytes per buffer, a multiple of the frame size
+    private final int poolSize;
+    private final Backpressure backpressure;
+    private final Thread thread;
+
+    // Only used by the simulation thread
+    private ByteBuffer current;         // The buffer being filled, null if none
+
+    // Guarded by this
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();     // Pooled buffers ready to be filled
+    private final ArrayDeque<ByteBuffer> full = new ArrayDeque<>();     // Buffers waiting to be written
+    private int allocated = 0;          // Number of pooled buffers allocated so far
+    private boolean closed = false;
+    private long frames = 0;            // Number of frames handed to the writer
+    private long dropped = 0;           // Number of frames not written because of Backpressure.Drop
+    private long spilled = 0;           // Number of buffers allocated outside of the pool because of Backpressure.Spill
+    private IOException error;          // The first error of the writer thread, nothing is written after it
+
+    // Constructor, writes every stepStride-th step and every bodyStride-th of the n bodies into the file
+    public TrajectoryWriter(File file, int n, int stepStride, int bodyStride, int poolSize, Backpressure backpressure) throws IOException {
+        if (stepStride <= 0 || bodyStride <= 0) throw new IllegalArgumentException("The strides must be positive");
+        if (poolSize <= 0) throw new IllegalArgumentException("The pool needs at least one buffer");
+        this.stepStride = stepStride;
+        this.bodyStride = bodyStride;
+        this.bodies = (n + bodyStride - 1) / bodyStride;
+        this.is3D = Simulation.enableZCoordinate;
+        long frameSize = Long.BYTES + (long) this.bodies * (this.is3D ? 3 : 2) * Double.BYTES;
+        if (frameSize > Integer.MAX_VALUE) throw new IllegalArgumentException("A frame is too large, use a larger body stride");
+        this.frameSize = (int) frameSize;
+        this.bufferSize = Math.max(1, BUFFER_SIZE / this.frameSize) * this.frameSize;
+        this.poolSize = poolSize;
+        this.backpressure = backpressure;
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(this.is3D ? FLAG_3D : 0).putInt(this.bodies)
+                .putInt(stepStride).putInt(bodyStride).putLong(0);
+        header.flip();
+        try {
+            while (header.hasRemaining()) this.channel.write(header);
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+
+        this.thread = new Thread(this::run, "trajectory");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Copies the positions into the current buffer if the step is written
+    @Override
+    public void afterStep(BodyStore bodies, long step) {
+        if (step % this.stepStride != 0) return;
+        if (this.current == null) {
+            this.current = acquire();
+            if (this.current == null) return;   // Dropped
+        }
+
+        ByteBuffer buffer = this.current;
+        buffer.putLong(step);
+        int n = bodies.size();
+        int m = this.bodyStride;
+        if (this.is3D) {
+            for (int i = 0; i < n; i += m) buffer.putDouble(bodies.px[i]).putDouble(bodies.py[i]).putDouble(bodies.pz[i]);
+        } else {
+            for (int i = 0; i < n; i += m) buffer.putDouble(bodies.px[i]).putDouble(bodies.py[i]);
+        }
+
+        synchronized (this) {
+            this.frames++;
+        }
+        if (buffer.remaining() < this.frameSize) {
+            submit(buffer);
+            this.current = null;
+        }
+    }
+
+    // Returns an empty buffer, or null if the frame has to be dropped
+    private ByteBuffer acquire() {
+        synchronized (this) {
+            if (this.closed) throw new IllegalStateException("The trajectory writer is closed");
+            while (true) {
+                if (this.error != null) {
+                    this.dropped++;
+                    return null;
+                }
+                ByteBuffer buffer = this.free.poll();
+                if (buffer != null) {
+                    buffer.clear();
+                    return buffer;
+                }
+                if (this.allocated < this.poolSize) {
+                    this.allocated++;
+                    break;
+                }
+                if (this.backpressure == Backpressure.Drop) {
+                    this.dropped++;
+                    return null;
+                }
+                if (this.backpressure == Backpressure.Spill) {
+                    this.spilled++;
+                    return ByteBuffer.allocate(this.bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.dropped++;
+                    return null;
+                }
+            }
+        }
+        // Pooled buffers are direct, so the channel writes them without another copy
+        return ByteBuffer.allocateDirect(this.bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Hands a buffer to the writer thread
+    private synchronized void submit(ByteBuffer buffer) {
+        buffer.flip();
+        this.full.add(buffer);
+        notifyAll();
+    }
+
+    // Writes the full buffers
+    private void run() {
+        while (true) {
+            ByteBuffer buffer;
+            boolean failed;
+            synchronized (this) {
+                while (this.full.isEmpty() && !this.closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (this.full.isEmpty()) return;
+                buffer = this.full.poll();
+                failed = this.error != null;
+            }
+
+            IOException error = null;
+            try {
+                while (!failed && buffer.hasRemaining()) this.channel.write(buffer);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            synchronized (this) {
+                if (error != null && this.error == null) {
+                    this.error = error;
+                    System.err.println("Could not write the trajectory: " + error.getMessage());
+                }
+                // Spilled buffers are left to the garbage collector, the pool keeps its size
+                if (buffer.isDirect()) this.free.add(buffer);
+                notifyAll();
+            }
+        }
+    }
+
+    // Returns the number of frames handed to the writer
+    public synchronized long getFrames() {
+        return this.frames;
+    }
+
+    // Returns the number of frames dropped because the writer fell behind or failed
+    public synchronized long getDropped() {
+        return this.dropped;
+    }
+
+    // Returns the number of buffers allocated outside of the pool
+    public synchronized long getSpilled() {
+        return this.spilled;
+    }
+
+    // Writes the remaining frames and closes the file. Must not be called while afterStep runs
+    // Throws the error of the writer thread if a frame could not be written
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) return;
+        }
+        if (this.current != null && this.current.position() > 0) submit(this.current);
+        this.current = null;
+        synchronized (this) {
+            this.closed = true;
+            notifyAll();
+        }
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.channel.close();
+        synchronized (this) {
+            if (this.error != null) throw this.error;
+        }
+    }
+}
@@ -74,6 +74,13 @@ public class Vector3 {
         this.z /= length;
     }
 
+    // Adds the given coordinates to this vector, without creating a new vector
+    public void add(double x, double y, double z) {
+        this.x += x;
+        this.y += y;
+        this.z += z;
+    }
+
     // Resets all coordinates to 0
     public void reset() {
         this.x = 0;
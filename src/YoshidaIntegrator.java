@@ -0,0 +1,20 @@
+/*
+    Fourth order symplectic integration after Yoshida (1990), also known as Forest-Ruth:
+    a step is made of three leapfrog steps of the lengths w1 * dt, w0 * dt and w1 * dt with
+
+    w1 = 1 / (2 - 2^(1/3))          ~  1.3512
+    w0 = -2^(1/3) / (2 - 2^(1/3))   ~ -1.7024
+
+    so the middle step goes backwards in time. The errors of second order cancel, which costs three force
+    calculations per step, but the energy error shrinks with dt^4 instead of dt^2. See LeapfrogIntegrator.
+ */
+public class YoshidaIntegrator extends LeapfrogIntegrator {
+
+    private static final double CBRT2 = Math.cbrt(2);
+    private static final double W1 = 1 / (2 - CBRT2);
+    private static final double W0 = -CBRT2 / (2 - CBRT2);
+
+    public YoshidaIntegrator() {
+        super(W1, W0, W1);
+    }
+}